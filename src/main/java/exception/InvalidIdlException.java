@@ -0,0 +1,43 @@
+package exception;
+
+/**
+ * This class represents an error found while reading an interface
+ * description, either malformed JSON or a description which doesn't
+ * follow the expected schema.
+ *
+ * The message starts with the line and column where it was found.
+ */
+public class InvalidIdlException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+
+    private final int column;
+
+    /**
+     * @param message - Description of the error.
+     * @param line - Line where it was found, starting at 1.
+     * @param column - Column where it was found, starting at 1.
+     */
+    public InvalidIdlException(String message, int line, int column) {
+        super(line + ":" + column + ": " + message);
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * @return The line where the error was found, starting at 1.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return The column where the error was found, starting at 1.
+     */
+    public int getColumn() {
+        return column;
+    }
+
+}
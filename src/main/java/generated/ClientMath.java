@@ -1,23 +1,61 @@
 package generated;
 
+import implementation.ClientRequestHandlerImpl;
 import implementation.UnsyncRequestor;
-import interfaces.Requestor;
+import interfaces.ClientRequestHandler;
 import java.io.IOException;
 import java.lang.ClassNotFoundException;
 import java.lang.Float;
 import java.lang.Integer;
+import java.lang.Override;
+import java.lang.String;
+import java.util.HashMap;
+import java.util.Map;
 import model.AbsoluteObjectReference;
+import model.OperationOptions;
+import model.PriorityClass;
 
 /**
  * Provides mathematical methods */
 public class ClientMath implements Math {
+  private static final Map<String, OperationOptions> OPERATIONS = new HashMap<>();
+
+  static {
+    OPERATIONS.put("pi", OperationOptions.DEFAULT.idempotent().withMaxFrameSize(4096));
+    OPERATIONS.put("fibonacci", OperationOptions.DEFAULT.hedged().withPriority(PriorityClass.INTERACTIVE).withCodec("compact"));
+    OPERATIONS.put("fibonacciBulk", OperationOptions.DEFAULT.idempotent().withPriority(PriorityClass.BATCH).withCodec("compact"));
+  }
+
   private AbsoluteObjectReference aor;
 
-  private Requestor r;
+  private UnsyncRequestor r;
 
   public ClientMath(AbsoluteObjectReference aor) {
+    this(aor, ClientRequestHandlerImpl.getInstance());
+  }
+
+  public ClientMath(AbsoluteObjectReference aor, ClientRequestHandler handler) {
+    this(aor, handler, null);
+  }
+
+  /**
+   * @param priority the class of all the calls of this proxy, null for the ones declared
+   */
+  public ClientMath(AbsoluteObjectReference aor, ClientRequestHandler handler,
+      PriorityClass priority) {
     this.aor = aor;
-    this.r = new UnsyncRequestor();
+    UnsyncRequestor requestor = new UnsyncRequestor(handler, OPERATIONS);
+    requestor.setPriority(priority);
+    this.r = requestor;
+  }
+
+  /**
+   * Marshals the calls of an operation with another codec from now on
+   * @param operationName the name of the operation
+   * @param codec the name of a registered codec, null for the one declared
+   */
+  public void setCodec(String operationName, String codec) {
+    r.setCodec(operationName, codec);
   }
 
   /**
@@ -26,7 +64,7 @@ public class ClientMath implements Math {
    * @return float */
   public Float pi(Float precision) throws exception.RemoteError, IOException,
       ClassNotFoundException {
-    return (Float) r.request(aor,"pi",precision);
+    return r.request(aor,"pi",Float.class,precision);
   }
 
   /**
@@ -36,6 +74,12 @@ public class ClientMath implements Math {
    * @return int */
   public Integer fibonacci(Integer start, Integer i) throws exception.RemoteError, IOException,
       ClassNotFoundException {
-    return (Integer) r.request(aor,"fibonacci",start,i);
+    return r.request(aor,"fibonacci",Integer.class,start,i);
+  }
+
+  @Override
+  public int[] fibonacciBulk(int[] start, int[] i) throws exception.RemoteError, IOException,
+      ClassNotFoundException {
+    return r.request(aor,"fibonacciBulk",int[].class,new Object[] {start, i});
   }
 }
@@ -1,5 +1,6 @@
 package generated;
 
+import implementation.Bulk;
 import java.io.IOException;
 import java.lang.ClassNotFoundException;
 import java.lang.Float;
@@ -21,4 +22,16 @@ public interface Math {
    * @return int */
   Integer fibonacci(Integer start, Integer i) throws exception.RemoteError, IOException,
       ClassNotFoundException;
+
+  /**
+   * Applies {@link #fibonacci} to the elements at each position of the arrays
+   */
+  default int[] fibonacciBulk(int[] start, int[] i) throws exception.RemoteError, IOException,
+      ClassNotFoundException {
+    int[] _result = new int[Bulk.length(start.length, i.length)];
+    for (int _k = 0; _k < _result.length; _k++) {
+      _result[_k] = Bulk.result(fibonacci(start[_k], i[_k]), "fibonacci", _k);
+    }
+    return _result;
+  }
 }
@@ -0,0 +1,65 @@
+package generated;
+
+import implementation.Bulk;
+import implementation.Invocation;
+import interfaces.Invoker;
+import java.io.IOException;
+import java.lang.ClassNotFoundException;
+import java.lang.Float;
+import java.lang.Integer;
+import java.lang.Object;
+import java.lang.Override;
+import java.lang.String;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import model.ExecutionStrategy;
+
+/**
+ * Invoker of remote {@code Math} objects */
+public class MathInvoker implements Invoker {
+  private static final Set<String> COALESCED = new HashSet<>(Arrays.asList("pi"));
+
+  private final Math object;
+
+  public MathInvoker(Math object) {
+    this.object = object;
+  }
+
+  @Override
+  public boolean isCoalesced(String operationName) {
+    return COALESCED.contains(operationName);
+  }
+
+  @Override
+  public ExecutionStrategy getExecution(String operationName) {
+    switch (operationName) {
+      case "fibonacci":
+      case "fibonacciBulk":
+        return ExecutionStrategy.POOLED;
+      default:
+        return ExecutionStrategy.INLINE;
+    }
+  }
+
+  @Override
+  public Object invoke(Invocation invocation) throws exception.RemoteError, IOException,
+      ClassNotFoundException {
+    Object[] params = invocation.getInvocationData().getActualParams();
+    switch (invocation.getInvocationData().getOperationName()) {
+      case "pi":
+        return object.pi(Invoker.argument(params, 0, Float.class, 0f));
+      case "fibonacci":
+        return object.fibonacci(Invoker.argument(params, 0, Integer.class, 0), Invoker.argument(params, 1, Integer.class, 0));
+      case "fibonacciBulk": {
+        int[] _start = Invoker.argument(params, 0, int[].class, new int[0]);
+        int[] _i = Invoker.argument(params, 1, int[].class, new int[0]);
+        int[] _result = new int[Bulk.length(_start.length, _i.length)];
+        Bulk.forEach(_result.length, _k -> _result[_k] = Bulk.result(object.fibonacci(_start[_k], _i[_k]), "fibonacci", _k));
+        return _result;
+      }
+      default:
+        throw new exception.RemoteError("Unknown operation " + invocation.getInvocationData().getOperationName());
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package implementation;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the addresses a host name resolves to for a limited time,
+ * so connecting again to the same host skips the name lookup.
+ */
+class AddressCache {
+	
+	/**
+	 * Default time (in milliseconds) resolved addresses are kept
+	 */
+	static final long DEFAULT_TTL = 30000L;
+	
+	private final long ttl;
+	
+	private final Map<String, Resolved> resolved = new ConcurrentHashMap<String, Resolved>();
+	
+	AddressCache() {
+		this(DEFAULT_TTL);
+	}
+	
+	/**
+	 * @param ttl time (in milliseconds) resolved addresses are kept
+	 */
+	AddressCache(long ttl) {
+		this.ttl = ttl;
+	}
+	
+	/**
+	 * Gets the addresses of a host, resolving it if they are not cached or expired
+	 * @param host the host name or literal address
+	 * @return the addresses, in the order given by the resolver
+	 * @throws UnknownHostException if the host can't be resolved
+	 */
+	InetAddress[] resolve(String host) throws UnknownHostException {
+		long now = System.currentTimeMillis();
+		Resolved r = resolved.get(host);
+		if(r == null || r.expiresAt <= now) {
+			r = new Resolved(InetAddress.getAllByName(host), now + ttl);
+			resolved.put(host, r);
+		}
+		return r.addresses;
+	}
+	
+	/**
+	 * Forgets the addresses of a host, when none of them could be reached
+	 * @param host the host name
+	 */
+	void invalidate(String host) {
+		resolved.remove(host);
+	}
+	
+	private static final class Resolved {
+		private final InetAddress[] addresses;
+		private final long expiresAt;
+		
+		Resolved(InetAddress[] addresses, long expiresAt) {
+			this.addresses = addresses;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
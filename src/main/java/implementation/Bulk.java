@@ -0,0 +1,143 @@
+package implementation;
+
+import exception.RemoteError;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Support of the bulk versions of vectorizable operations, used by
+ * the generated interfaces and invokers. Invokers apply the scalar
+ * operation to the elements of the arrays in parallel, splitting them
+ * across the common fork-join pool.
+ */
+public final class Bulk {
+
+	/**
+	 * Arrays this short run on the calling thread
+	 */
+	private static final int SEQUENTIAL_THRESHOLD = 64;
+
+	/**
+	 * Work applied to one position of the arrays
+	 */
+	public interface Body {
+		void apply(int index) throws Exception;
+	}
+
+	private Bulk() {
+	}
+
+	/**
+	 * Gets the length of the result of a bulk operation
+	 *
+	 * @param lengths the lengths of the argument arrays
+	 * @return their common length
+	 * @throws RemoteError if they differ
+	 */
+	public static int length(int... lengths) throws RemoteError {
+		for(int length : lengths) {
+			if(length != lengths[0]) {
+				throw new RemoteError("Bulk arguments differ in length: " + Arrays.toString(lengths));
+			}
+		}
+		return lengths[0];
+	}
+
+	/**
+	 * Checks the result of the scalar operation at a position before it is
+	 * stored into an array of primitives
+	 *
+	 * @param value the result
+	 * @param operation the name of the scalar operation
+	 * @param index the position
+	 * @return the result
+	 * @throws RemoteError if it is null
+	 */
+	public static <T> T result(T value, String operation, int index) throws RemoteError {
+		if(value == null) {
+			throw new RemoteError(operation + " returned null at index " + index);
+		}
+		return value;
+	}
+
+	/**
+	 * Applies the body to every position from 0 to length - 1, in parallel
+	 *
+	 * @param length the number of positions
+	 * @param body the work applied to each one
+	 * @throws RemoteError the error raised by the body, wrapping it unless it is one
+	 */
+	public static void forEach(int length, Body body) throws RemoteError {
+		try {
+			if(length <= SEQUENTIAL_THRESHOLD) {
+				for(int index = 0; index < length; ++index) {
+					body.apply(index);
+				}
+				return;
+			}
+			int chunk = Math.max(SEQUENTIAL_THRESHOLD / 4, length / (4 * ForkJoinPool.getCommonPoolParallelism()));
+			ForkJoinPool.commonPool().invoke(new Slice(body, 0, length, chunk));
+		} catch (Failure e) {
+			throw e.error;
+		} catch (RemoteError e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RemoteError(e);
+		}
+	}
+
+	/**
+	 * Applies the body to a range of positions, halving it until it is small enough
+	 */
+	private static final class Slice extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Body body;
+		private final int from;
+		private final int to;
+		private final int chunk;
+
+		Slice(Body body, int from, int to, int chunk) {
+			this.body = body;
+			this.from = from;
+			this.to = to;
+			this.chunk = chunk;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= chunk) {
+				for(int index = from; index < to; ++index) {
+					try {
+						body.apply(index);
+					} catch (RemoteError e) {
+						throw new Failure(e);
+					} catch (Exception e) {
+						throw new Failure(new RemoteError(e));
+					}
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new Slice(body, from, middle, chunk), new Slice(body, middle, to, chunk));
+		}
+	}
+
+	/**
+	 * Carries the error of a slice out of the pool
+	 */
+	private static final class Failure extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final RemoteError error;
+
+		Failure(RemoteError error) {
+			super(error);
+			this.error = error;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package implementation;
+
+import model.CapturedCall;
+import model.OperationOptions;
+import model.PriorityClass;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads back the calls of a capture file written by a
+ * {@link RecordingClientProtocol}, in the order they were recorded.
+ */
+public class CaptureReader implements Closeable {
+
+	private final DataInputStream in;
+
+	private final long startMillis;
+
+	private final int version;
+
+	/**
+	 * Opens a capture file
+	 * @param file the capture file
+	 * @throws IOException if the file can't be read or isn't a capture
+	 */
+	public CaptureReader(Path file) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+		try {
+			if(in.readInt() != RecordingClientProtocol.MAGIC) {
+				throw new IOException(file + " is not a capture file");
+			}
+			this.version = in.readUnsignedByte();
+			if(version < 1 || version > RecordingClientProtocol.VERSION) {
+				throw new IOException(file + " has capture version " + version + ", expected 1 to "
+						+ RecordingClientProtocol.VERSION);
+			}
+			this.startMillis = in.readLong();
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return when the capture started, in milliseconds since the epoch
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * Reads the next call
+	 * @return the call, or null at the end of the capture
+	 * @throws IOException if the file can't be read
+	 */
+	public CapturedCall next() throws IOException {
+		int length;
+		try {
+			length = in.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		if(length <= 0) {
+			// a record the recorder didn't finish
+			return null;
+		}
+		long sent = readVarint64();
+		long elapsed = readVarint64();
+		int flags = in.readUnsignedByte();
+		int codec = version < 2 ? MarshallerRegistry.DEFAULT : in.readUnsignedByte();
+		String host = new String(readBytes(), StandardCharsets.UTF_8);
+		int port = (int) readVarint64();
+		byte[] request = readBytes();
+		byte[] reply = readBytes();
+		OperationOptions options = OperationOptions.DEFAULT
+				.withPriority(PriorityClass.values()[flags >>> RecordingClientProtocol.PRIORITY_SHIFT]);
+		if((flags & RecordingClientProtocol.HEDGED) != 0) {
+			options = options.hedged();
+		} else if((flags & RecordingClientProtocol.IDEMPOTENT) != 0) {
+			options = options.idempotent();
+		}
+		return new CapturedCall(sent, elapsed, host, port, options,
+				(flags & RecordingClientProtocol.FAILED) != 0, codec, request, reply);
+	}
+
+	private long readVarint64() throws IOException {
+		long value = 0L;
+		for(int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("malformed varint in capture");
+	}
+
+	private byte[] readBytes() throws IOException {
+		byte[] bytes = new byte[(int) readVarint64()];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
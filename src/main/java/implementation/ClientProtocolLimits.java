@@ -0,0 +1,143 @@
+package implementation;
+
+/**
+ * Describes the limits of a {@link DefaultClientProtocol}: its threads,
+ * how long it keeps idle connections and the queue of the calls waiting
+ * for a thread. Instances are immutable, each modifier returns a new instance.
+ */
+public final class ClientProtocolLimits {
+
+	/**
+	 * Limits of a protocol created with the default constructor
+	 */
+	public static final ClientProtocolLimits DEFAULT = new ClientProtocolLimits(1000, 10000L,
+			DefaultClientProtocol.DEFAULT_QUEUE_CAPACITY, OverflowPolicy.BLOCK, DefaultClientProtocol.DEFAULT_BLOCK_TIMEOUT);
+
+	private final int maxConnections;
+	private final long timeLimit;
+	private final int queueCapacity;
+	private final OverflowPolicy overflowPolicy;
+	private final long blockTimeout;
+
+	private ClientProtocolLimits(int maxConnections, long timeLimit, int queueCapacity,
+			OverflowPolicy overflowPolicy, long blockTimeout) {
+		if(maxConnections <= 0) {
+			throw new IllegalArgumentException("maxConnections must be positive, got " + maxConnections);
+		}
+		if(timeLimit < 0) {
+			throw new IllegalArgumentException("timeLimit cannot be negative, got " + timeLimit);
+		}
+		if(queueCapacity <= 0) {
+			throw new IllegalArgumentException("queueCapacity must be positive, got " + queueCapacity);
+		}
+		if(overflowPolicy == null) {
+			throw new IllegalArgumentException("overflowPolicy cannot be null");
+		}
+		if(blockTimeout < 0) {
+			throw new IllegalArgumentException("blockTimeout cannot be negative, got " + blockTimeout);
+		}
+		this.maxConnections = maxConnections;
+		this.timeLimit = timeLimit;
+		this.queueCapacity = queueCapacity;
+		this.overflowPolicy = overflowPolicy;
+		this.blockTimeout = blockTimeout;
+	}
+
+	/**
+	 *
+	 * @return the maximum number of threads
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 *
+	 * @return the time limit (in milliseconds) of keeping connections alive to cache
+	 */
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	/**
+	 *
+	 * @return the maximum number of calls waiting for a thread
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 *
+	 * @return what to do with calls when the queue is full
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 *
+	 * @return the time (in milliseconds) a call waits for room in the queue,
+	 * used by {@link OverflowPolicy#BLOCK}
+	 */
+	public long getBlockTimeout() {
+		return blockTimeout;
+	}
+
+	/**
+	 *
+	 * @return a copy of these limits with the given maximum number of threads
+	 */
+	public ClientProtocolLimits maxConnections(int maxConnections) {
+		return new ClientProtocolLimits(maxConnections, timeLimit, queueCapacity, overflowPolicy, blockTimeout);
+	}
+
+	/**
+	 *
+	 * @return a copy of these limits keeping idle connections for the given milliseconds
+	 */
+	public ClientProtocolLimits timeLimit(long timeLimit) {
+		return new ClientProtocolLimits(maxConnections, timeLimit, queueCapacity, overflowPolicy, blockTimeout);
+	}
+
+	/**
+	 *
+	 * @return a copy of these limits with the given queue capacity
+	 */
+	public ClientProtocolLimits queueCapacity(int queueCapacity) {
+		return new ClientProtocolLimits(maxConnections, timeLimit, queueCapacity, overflowPolicy, blockTimeout);
+	}
+
+	/**
+	 *
+	 * @return a copy of these limits handling a full queue with the given policy,
+	 * the block timeout being used by {@link OverflowPolicy#BLOCK}
+	 */
+	public ClientProtocolLimits overflow(OverflowPolicy overflowPolicy, long blockTimeout) {
+		return new ClientProtocolLimits(maxConnections, timeLimit, queueCapacity, overflowPolicy, blockTimeout);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof ClientProtocolLimits)) {
+			return false;
+		}
+		ClientProtocolLimits other = (ClientProtocolLimits) obj;
+		return maxConnections == other.maxConnections && timeLimit == other.timeLimit
+				&& queueCapacity == other.queueCapacity && overflowPolicy == other.overflowPolicy
+				&& blockTimeout == other.blockTimeout;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * (31 * (31 * maxConnections + Long.hashCode(timeLimit)) + queueCapacity)
+				+ overflowPolicy.hashCode()) + Long.hashCode(blockTimeout);
+	}
+
+	@Override
+	public String toString() {
+		return maxConnections + " threads, " + timeLimit + "ms idle, queue of " + queueCapacity + " "
+				+ overflowPolicy + " " + blockTimeout + "ms";
+	}
+
+}
@@ -6,10 +6,15 @@ import java.io.ByteArrayOutputStream;
 import exception.RemoteError;
 import interfaces.ClientProtocolPlugin;
 import interfaces.ClientRequestHandler;
+import model.OperationOptions;
 
 /**
  * The Client Request Handle is responsible for sending data to the server.
- * Follows Singleton pattern.
+ * A default instance is shared through {@link #getInstance()}, isolated
+ * instances can be created through {@link ClientRequestHandlerRegistry}.
+ * The default instance sends through a {@link DefaultClientProtocol}, over TCP
+ * to servers of this host too; a {@link LocalRoutingClientProtocol} set with
+ * {@link #setProtocol(ClientProtocolPlugin)} sends those through Unix domain sockets.
  * 
  * @author victoragnez
  */
@@ -24,7 +29,15 @@ public final class ClientRequestHandlerImpl implements ClientRequestHandler {
 	 * Private constructor which sets default values
 	 */
 	private ClientRequestHandlerImpl() {
-		this.protocol = new DefaultClientProtocol();
+		this(new DefaultClientProtocol());
+	}
+	
+	/**
+	 * Creates a handler with its own protocol instance
+	 * @param protocol protocol of communication, owned by this handler
+	 */
+	public ClientRequestHandlerImpl(ClientProtocolPlugin protocol) {
+		this.protocol = protocol;
 	}
 	
 	/**
@@ -59,6 +72,14 @@ public final class ClientRequestHandlerImpl implements ClientRequestHandler {
 		return getProtocol().send(host, port, msg);
 	}
 
+	/* (non-Javadoc)
+	 * @see interfaces.ClientRequestHandler#send(java.lang.String, int, java.io.ByteArrayOutputStream, model.OperationOptions)
+	 */
+	@Override
+	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg, OperationOptions options) throws RemoteError {
+		return getProtocol().send(host, port, msg, options);
+	}
+
 	/* (non-Javadoc)
 	 * @see br.ufrn.dimap.middleware.remotting.interfaces.ClientRequestHandler#getProtocol()
 	 */
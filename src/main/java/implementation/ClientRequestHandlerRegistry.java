@@ -0,0 +1,111 @@
+package implementation;
+
+import exception.RemoteError;
+import interfaces.ClientProtocolPlugin;
+import interfaces.ClientRequestHandler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps named Client Request Handlers, each with its own protocol,
+ * threads and connections, so that traffic of one group of clients
+ * can't starve another. Stubs receive the handler of their group
+ * through their constructor.
+ * 
+ * The name {@value #DEFAULT} always refers to the shared handler
+ * returned by {@link ClientRequestHandlerImpl#getInstance()}, whose
+ * protocol has the {@link ClientProtocolLimits#DEFAULT} limits.
+ */
+public final class ClientRequestHandlerRegistry {
+	
+	/**
+	 * Name of the shared handler
+	 */
+	public static final String DEFAULT = "default";
+	
+	/**
+	 * Maps the name to the handler
+	 */
+	private static final Map<String, ClientRequestHandler> handlers = new ConcurrentHashMap<String, ClientRequestHandler>();
+	
+	/**
+	 * Maps the name of the handlers created by {@link #getOrCreate(String, ClientProtocolLimits)} to their limits
+	 */
+	private static final Map<String, ClientProtocolLimits> created = new ConcurrentHashMap<String, ClientProtocolLimits>();
+	
+	private ClientRequestHandlerRegistry() {
+	}
+	
+	/**
+	 * Gets a handler by name
+	 * @param name the handler name
+	 * @return the handler
+	 * @throws IllegalArgumentException if there is no handler with that name
+	 */
+	public static ClientRequestHandler get(String name) {
+		if(DEFAULT.equals(name)) {
+			return ClientRequestHandlerImpl.getInstance();
+		}
+		ClientRequestHandler handler = handlers.get(name);
+		if(handler == null) {
+			throw new IllegalArgumentException("no handler named " + name);
+		}
+		return handler;
+	}
+	
+	/**
+	 * Gets a handler by name, creating it with a {@link DefaultClientProtocol}
+	 * with the given limits if needed
+	 * @param name the handler name
+	 * @param limits the limits of the protocol of the handler
+	 * @return the handler
+	 * @throws IllegalStateException if the handler exists with other limits,
+	 * or was registered with its own protocol
+	 */
+	public static synchronized ClientRequestHandler getOrCreate(String name, ClientProtocolLimits limits) {
+		ClientProtocolLimits existing = DEFAULT.equals(name) ? ClientProtocolLimits.DEFAULT : created.get(name);
+		if(existing == null && !handlers.containsKey(name)) {
+			ClientRequestHandler handler = new ClientRequestHandlerImpl(new DefaultClientProtocol(limits));
+			created.put(name, limits);
+			handlers.put(name, handler);
+			return handler;
+		}
+		if(!limits.equals(existing)) {
+			throw new IllegalStateException("the handler named " + name + " exists with "
+					+ (existing == null ? "its own protocol" : existing) + ", not " + limits);
+		}
+		return get(name);
+	}
+	
+	/**
+	 * Registers a handler using the given protocol
+	 * @param name the handler name
+	 * @param protocol protocol of communication, owned by the new handler
+	 * @return the new handler
+	 * @throws IllegalArgumentException if the name is already in use
+	 */
+	public static synchronized ClientRequestHandler register(String name, ClientProtocolPlugin protocol) {
+		ClientRequestHandler handler = new ClientRequestHandlerImpl(protocol);
+		if(DEFAULT.equals(name) || handlers.putIfAbsent(name, handler) != null) {
+			throw new IllegalArgumentException("a handler named " + name + " already exists");
+		}
+		return handler;
+	}
+	
+	/**
+	 * Removes a handler and shuts its protocol down
+	 * @param name the handler name
+	 * @throws RemoteError if the protocol fails to shut down
+	 */
+	public static void remove(String name) throws RemoteError {
+		ClientRequestHandler handler;
+		synchronized(ClientRequestHandlerRegistry.class) {
+			handler = handlers.remove(name);
+			created.remove(name);
+		}
+		if(handler != null) {
+			handler.getProtocol().shutdown();
+		}
+	}
+}
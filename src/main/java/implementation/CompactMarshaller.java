@@ -0,0 +1,690 @@
+package implementation;
+
+import exception.RemoteError;
+import interfaces.Decoder;
+import interfaces.Marshaller;
+import model.AbsoluteObjectReference;
+import model.ObjectId;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Marshaller writing a compact, language neutral binary format in
+ * the spirit of protocol buffers: every field is preceded by a key
+ * holding its number and wire type, integers are varints (zigzag
+ * encoded when signed) and nested messages are length delimited.
+ * Fields a reader does not know are skipped, so clients and servers
+ * built from different versions of an interface description keep
+ * talking to each other; missing fields read as absent.
+ *
+ * <pre>
+ * frame      = version:byte field*
+ * invocation = 1 invoker id, 2-3 object id, 4 host, 5 port,
+ *              6 operation, 7 argument:value (repeated, in order),
+ *              8 context entry (repeated: 1 key, 2 value)
+ * reference  = the fields 1 to 5 of an invocation
+ * reply      = 1 return:value | 2 error message
+ * value      = one of 1 int, 2 float, 3 boolean, 4 string, 5 char,
+ *              6 long, 7 double, 8 int[], 9 float[], 10 boolean[],
+ *              11 char[], 12 string[], 15 java serialized object; null if empty
+ * arrays     = packed: the elements of a single length delimited field,
+ *              strings as repeated 1 string or 2 null
+ * </pre>
+ *
+ * The version byte only changes on incompatible changes of the
+ * format itself, never because of interface changes.
+ */
+public class CompactMarshaller implements Marshaller {
+
+	/**
+	 * Version of the format written by this marshaller
+	 */
+	public static final int VERSION = 1;
+
+	static final int VARINT = 0;
+	static final int FIXED64 = 1;
+	static final int LENGTH_DELIMITED = 2;
+	static final int FIXED32 = 5;
+
+	private static final int INVOKER_ID = 1;
+	private static final int OBJECT_ID_HIGH = 2;
+	private static final int OBJECT_ID_LOW = 3;
+	private static final int HOST = 4;
+	private static final int PORT = 5;
+	private static final int OPERATION = 6;
+	private static final int ARGUMENT = 7;
+	private static final int CONTEXT = 8;
+
+	private static final int ENTRY_KEY = 1;
+	private static final int ENTRY_VALUE = 2;
+
+	private static final int RETURN = 1;
+	private static final int ERROR = 2;
+
+	private static final int INT = 1;
+	private static final int FLOAT = 2;
+	private static final int BOOLEAN = 3;
+	private static final int STRING = 4;
+	private static final int CHAR = 5;
+	private static final int LONG = 6;
+	private static final int DOUBLE = 7;
+	private static final int INT_ARRAY = 8;
+	private static final int FLOAT_ARRAY = 9;
+	private static final int BOOLEAN_ARRAY = 10;
+	private static final int CHAR_ARRAY = 11;
+	private static final int STRING_ARRAY = 12;
+	private static final int SERIALIZED = 15;
+
+	private static final int ARRAY_STRING = 1;
+	private static final int ARRAY_NULL = 2;
+
+	/**
+	 * Decoders already created, shared by all instances
+	 */
+	private static final Map<Class<?>, Decoder<?>> decoders = new ConcurrentHashMap<Class<?>, Decoder<?>>();
+
+	/**
+	 * Writes invocations, argument arrays (as the arguments of an
+	 * invocation), object references (as the reference of an invocation),
+	 * RemoteErrors as error replies and any other object as a return value.
+	 */
+	public ByteArrayOutputStream marshal(Object object) throws IOException {
+		Output out = new Output();
+		out.write(VERSION);
+		if(object instanceof Invocation) {
+			writeInvocation(out, (Invocation) object);
+		} else if(object instanceof AbsoluteObjectReference) {
+			writeReference(out, (AbsoluteObjectReference) object);
+		} else if(object != null && object.getClass() == Object[].class) {
+			writeArguments(out, (Object[]) object);
+		} else if(object instanceof RemoteError) {
+			String message = ((RemoteError) object).getMessage();
+			if(message != null) {
+				out.writeString(ERROR, message);
+			} else {
+				out.writeKey(ERROR, LENGTH_DELIMITED);
+				out.writeVarint(0);
+			}
+		} else {
+			out.writeValue(RETURN, object);
+		}
+		return out;
+	}
+
+	/**
+	 * Reads an invocation if tgtClass is Invocation, the arguments if it is
+	 * an array, a reference if it is AbsoluteObjectReference, and a reply
+	 * otherwise; error replies are returned as RemoteError
+	 */
+	public <T> T unmarshal(ByteArrayInputStream byteStream, Class<T> tgtClass) throws IOException, ClassNotFoundException {
+		Input in = Input.of(byteStream);
+		if(tgtClass == Invocation.class) {
+			return tgtClass.cast(readInvocation(in));
+		}
+		if(tgtClass == Object[].class) {
+			return tgtClass.cast(readInvocationData(in).getActualParams());
+		}
+		if(tgtClass == AbsoluteObjectReference.class) {
+			return tgtClass.cast(readInvocationData(in).getAor());
+		}
+		try {
+			return tgtClass.cast(readReply(in));
+		} catch (RemoteError e) {
+			return tgtClass.cast(e);
+		}
+	}
+
+	/**
+	 * Gets a decoder which reads replies of the given class,
+	 * throwing the RemoteError sent instead when the call failed
+	 *
+	 * @param tgtClass class of the replies
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Decoder<T> decoderFor(Class<T> tgtClass) {
+		return (Decoder<T>) decoders.computeIfAbsent(tgtClass,
+				type -> byteStream -> type.cast(readReply(Input.of(byteStream))));
+	}
+
+	private static void writeInvocation(Output out, Invocation invocation) throws IOException {
+		InvocationData data = invocation.getInvocationData();
+		if(data.getAor() != null) {
+			writeReference(out, data.getAor());
+		}
+		out.writeString(OPERATION, data.getOperationName());
+		if(data.getActualParams() != null) {
+			writeArguments(out, data.getActualParams());
+		}
+		Map<String, Object> context = invocation.getContext();
+		if(context != null && !context.isEmpty()) {
+			Output entry = new Output();
+			for(Entry<String, Object> e : context.entrySet()) {
+				entry.reset();
+				entry.writeString(ENTRY_KEY, e.getKey());
+				entry.writeValue(ENTRY_VALUE, e.getValue());
+				out.writeMessage(CONTEXT, entry);
+			}
+		}
+	}
+
+	private static void writeReference(Output out, AbsoluteObjectReference aor) throws IOException {
+		out.writeKey(INVOKER_ID, VARINT);
+		out.writeVarint(aor.getInvokerId());
+		if(aor.getObjectId() != null) {
+			out.writeKey(OBJECT_ID_HIGH, FIXED64);
+			out.writeFixed64(aor.getObjectId().getMostSignificantBits());
+			out.writeKey(OBJECT_ID_LOW, FIXED64);
+			out.writeFixed64(aor.getObjectId().getObjectId());
+		}
+		if(aor.getHost() != null) {
+			out.writeString(HOST, aor.getHost());
+		}
+		out.writeKey(PORT, VARINT);
+		out.writeVarint(aor.getPort());
+	}
+
+	private static void writeArguments(Output out, Object[] arguments) throws IOException {
+		for(Object argument : arguments) {
+			out.writeValue(ARGUMENT, argument);
+		}
+	}
+
+	private static Invocation readInvocation(Input in) throws IOException, ClassNotFoundException {
+		Map<String, Object> context = new HashMap<String, Object>(Invocation.CONTEXT_CAPACITY);
+		InvocationData data = readInvocationData(in, context);
+		return new Invocation(data, context);
+	}
+
+	private static InvocationData readInvocationData(Input in) throws IOException, ClassNotFoundException {
+		return readInvocationData(in, null);
+	}
+
+	private static InvocationData readInvocationData(Input in, Map<String, Object> context) throws IOException, ClassNotFoundException {
+		int invokerId = 0;
+		long high = 0L;
+		long low = 0L;
+		boolean hasObjectId = false;
+		String host = null;
+		int port = 0;
+		String operation = null;
+		List<Object> arguments = new ArrayList<Object>(4);
+		while(in.hasMore()) {
+			int key = in.readVarint();
+			switch(key) {
+				case INVOKER_ID << 3 | VARINT:
+					invokerId = in.readVarint();
+					break;
+				case OBJECT_ID_HIGH << 3 | FIXED64:
+					high = in.readFixed64();
+					hasObjectId = true;
+					break;
+				case OBJECT_ID_LOW << 3 | FIXED64:
+					low = in.readFixed64();
+					hasObjectId = true;
+					break;
+				case HOST << 3 | LENGTH_DELIMITED:
+					host = in.readString();
+					break;
+				case PORT << 3 | VARINT:
+					port = in.readVarint();
+					break;
+				case OPERATION << 3 | LENGTH_DELIMITED:
+					operation = in.readString();
+					break;
+				case ARGUMENT << 3 | LENGTH_DELIMITED:
+					arguments.add(in.readValue());
+					break;
+				case CONTEXT << 3 | LENGTH_DELIMITED:
+					if(context == null) {
+						in.skip(LENGTH_DELIMITED);
+					} else {
+						readEntry(in, context);
+					}
+					break;
+				default:
+					in.skip(key & 7);
+			}
+		}
+		AbsoluteObjectReference aor = new AbsoluteObjectReference(
+				hasObjectId ? new ObjectId(high, low) : null, host, port, invokerId);
+		return new InvocationData(aor, operation, arguments.toArray());
+	}
+
+	private static void readEntry(Input in, Map<String, Object> context) throws IOException, ClassNotFoundException {
+		int end = in.readLength();
+		String key = null;
+		Object value = null;
+		while(in.position < end) {
+			int field = in.readVarint();
+			switch(field) {
+				case ENTRY_KEY << 3 | LENGTH_DELIMITED:
+					key = in.readString();
+					break;
+				case ENTRY_VALUE << 3 | LENGTH_DELIMITED:
+					value = in.readValue();
+					break;
+				default:
+					in.skip(field & 7);
+			}
+		}
+		in.position = end;
+		if(key != null) {
+			context.put(key, value);
+		}
+	}
+
+	/**
+	 * @return the return value of the reply
+	 * @throws RemoteError if the reply is an error
+	 */
+	private static Object readReply(Input in) throws RemoteError, IOException, ClassNotFoundException {
+		Object value = null;
+		while(in.hasMore()) {
+			int key = in.readVarint();
+			switch(key) {
+				case RETURN << 3 | LENGTH_DELIMITED:
+					value = in.readValue();
+					break;
+				case ERROR << 3 | LENGTH_DELIMITED:
+					String message = in.readString();
+					throw message.isEmpty() ? new RemoteError() : new RemoteError(message);
+				default:
+					in.skip(key & 7);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Output stream with field writers; length delimited
+	 * messages are written to a second buffer first
+	 */
+	private static final class Output extends ByteArrayOutputStream {
+
+		private Output scratch;
+
+		Output() {
+			super(64);
+		}
+
+		void writeKey(int field, int wireType) {
+			writeVarint(field << 3 | wireType);
+		}
+
+		void writeVarint(int value) {
+			writeVarint64(value & 0xFFFFFFFFL);
+		}
+
+		void writeVarint64(long value) {
+			while((value & ~0x7FL) != 0) {
+				write((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write((int) value);
+		}
+
+		static int varintSize(long value) {
+			int size = 1;
+			while((value & ~0x7FL) != 0) {
+				value >>>= 7;
+				++size;
+			}
+			return size;
+		}
+		
+		void writeFixed32(int value) {
+			write(value);
+			write(value >>> 8);
+			write(value >>> 16);
+			write(value >>> 24);
+		}
+
+		void writeFixed64(long value) {
+			writeFixed32((int) value);
+			writeFixed32((int) (value >>> 32));
+		}
+
+		void writeString(int field, String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeKey(field, LENGTH_DELIMITED);
+			writeVarint(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+
+		void writeMessage(int field, Output message) {
+			writeKey(field, LENGTH_DELIMITED);
+			writeVarint(message.count);
+			write(message.buf, 0, message.count);
+		}
+
+		/**
+		 * Writes a value message, empty for null
+		 */
+		void writeValue(int field, Object value) throws IOException {
+			if(scratch == null) {
+				scratch = new Output();
+			}
+			Output v = scratch;
+			v.reset();
+			if(value instanceof Integer) {
+				v.writeKey(INT, VARINT);
+				int i = (Integer) value;
+				v.writeVarint(i << 1 ^ i >> 31);
+			} else if(value instanceof Float) {
+				v.writeKey(FLOAT, FIXED32);
+				v.writeFixed32(Float.floatToIntBits((Float) value));
+			} else if(value instanceof Boolean) {
+				v.writeKey(BOOLEAN, VARINT);
+				v.write((Boolean) value ? 1 : 0);
+			} else if(value instanceof String) {
+				v.writeString(STRING, (String) value);
+			} else if(value instanceof Character) {
+				v.writeKey(CHAR, VARINT);
+				v.writeVarint((Character) value);
+			} else if(value instanceof Long) {
+				v.writeKey(LONG, VARINT);
+				long l = (Long) value;
+				v.writeVarint64(l << 1 ^ l >> 63);
+			} else if(value instanceof Double) {
+				v.writeKey(DOUBLE, FIXED64);
+				v.writeFixed64(Double.doubleToLongBits((Double) value));
+			} else if(value instanceof int[]) {
+				int[] ints = (int[]) value;
+				int size = 0;
+				for(int i : ints) {
+					size += varintSize((i << 1 ^ i >> 31) & 0xFFFFFFFFL);
+				}
+				v.writeKey(INT_ARRAY, LENGTH_DELIMITED);
+				v.writeVarint(size);
+				for(int i : ints) {
+					v.writeVarint(i << 1 ^ i >> 31);
+				}
+			} else if(value instanceof float[]) {
+				float[] floats = (float[]) value;
+				v.writeKey(FLOAT_ARRAY, LENGTH_DELIMITED);
+				v.writeVarint(4 * floats.length);
+				for(float f : floats) {
+					v.writeFixed32(Float.floatToIntBits(f));
+				}
+			} else if(value instanceof boolean[]) {
+				boolean[] booleans = (boolean[]) value;
+				v.writeKey(BOOLEAN_ARRAY, LENGTH_DELIMITED);
+				v.writeVarint(booleans.length);
+				for(boolean b : booleans) {
+					v.write(b ? 1 : 0);
+				}
+			} else if(value instanceof char[]) {
+				char[] chars = (char[]) value;
+				int size = 0;
+				for(char c : chars) {
+					size += varintSize(c);
+				}
+				v.writeKey(CHAR_ARRAY, LENGTH_DELIMITED);
+				v.writeVarint(size);
+				for(char c : chars) {
+					v.writeVarint(c);
+				}
+			} else if(value instanceof String[]) {
+				Output strings = new Output();
+				for(String string : (String[]) value) {
+					if(string == null) {
+						strings.writeKey(ARRAY_NULL, VARINT);
+						strings.write(0);
+					} else {
+						strings.writeString(ARRAY_STRING, string);
+					}
+				}
+				v.writeMessage(STRING_ARRAY, strings);
+			} else if(value != null) {
+				ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+				ObjectOutputStream objectStream = new ObjectOutputStream(serialized);
+				objectStream.writeObject(value);
+				objectStream.close();
+				v.writeKey(SERIALIZED, LENGTH_DELIMITED);
+				v.writeVarint(serialized.size());
+				serialized.writeTo(v);
+			}
+			writeMessage(field, v);
+		}
+	}
+
+	/**
+	 * Cursor over the bytes of a frame
+	 */
+	private static final class Input {
+
+		private final byte[] bytes;
+
+		private int position;
+
+		private Input(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Reads the remaining bytes of the stream and checks the version
+		 */
+		static Input of(ByteArrayInputStream byteStream) throws IOException {
+			byte[] bytes = new byte[byteStream.available()];
+			int read = byteStream.read(bytes, 0, bytes.length);
+			if(read < 1) {
+				throw new IOException("Empty compact frame");
+			}
+			Input in = new Input(bytes);
+			int version = in.bytes[in.position++];
+			if(version != VERSION) {
+				throw new IOException("Unsupported compact format version " + version);
+			}
+			return in;
+		}
+
+		boolean hasMore() {
+			return position < bytes.length;
+		}
+
+		private void need(int n) throws IOException {
+			if(n < 0 || bytes.length - position < n) {
+				throw new IOException("Truncated compact frame");
+			}
+		}
+
+		int readVarint() throws IOException {
+			return (int) readVarint64();
+		}
+
+		long readVarint64() throws IOException {
+			long value = 0L;
+			for(int shift = 0; shift < 64; shift += 7) {
+				need(1);
+				byte b = bytes[position++];
+				value |= (long) (b & 0x7F) << shift;
+				if(b >= 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed varint");
+		}
+
+		int readFixed32() throws IOException {
+			need(4);
+			int value = (bytes[position] & 0xFF) | (bytes[position + 1] & 0xFF) << 8
+					| (bytes[position + 2] & 0xFF) << 16 | (bytes[position + 3] & 0xFF) << 24;
+			position += 4;
+			return value;
+		}
+
+		long readFixed64() throws IOException {
+			return (readFixed32() & 0xFFFFFFFFL) | (long) readFixed32() << 32;
+		}
+
+		/**
+		 * Reads the length of a length delimited field
+		 * @return the position where the field ends
+		 */
+		int readLength() throws IOException {
+			int length = readVarint();
+			need(length);
+			return position + length;
+		}
+
+		String readString() throws IOException {
+			int end = readLength();
+			String value = new String(bytes, position, end - position, StandardCharsets.UTF_8);
+			position = end;
+			return value;
+		}
+
+		/**
+		 * Reads a value message, skipping the variants it does not know
+		 */
+		Object readValue() throws IOException, ClassNotFoundException {
+			int end = readLength();
+			Object value = null;
+			while(position < end) {
+				int key = readVarint();
+				switch(key) {
+					case INT << 3 | VARINT:
+						int i = readVarint();
+						value = i >>> 1 ^ -(i & 1);
+						break;
+					case FLOAT << 3 | FIXED32:
+						value = Float.intBitsToFloat(readFixed32());
+						break;
+					case BOOLEAN << 3 | VARINT:
+						value = readVarint() != 0;
+						break;
+					case STRING << 3 | LENGTH_DELIMITED:
+						value = readString();
+						break;
+					case CHAR << 3 | VARINT:
+						value = (char) readVarint();
+						break;
+					case LONG << 3 | VARINT:
+						long l = readVarint64();
+						value = l >>> 1 ^ -(l & 1);
+						break;
+					case DOUBLE << 3 | FIXED64:
+						value = Double.longBitsToDouble(readFixed64());
+						break;
+					case INT_ARRAY << 3 | LENGTH_DELIMITED: {
+						int arrayEnd = readLength();
+						int[] ints = new int[countVarints(arrayEnd)];
+						for(int k = 0; k < ints.length; ++k) {
+							int zigzag = readVarint();
+							ints[k] = zigzag >>> 1 ^ -(zigzag & 1);
+						}
+						value = ints;
+						break;
+					}
+					case FLOAT_ARRAY << 3 | LENGTH_DELIMITED: {
+						int arrayEnd = readLength();
+						float[] floats = new float[(arrayEnd - position) / 4];
+						for(int k = 0; k < floats.length; ++k) {
+							floats[k] = Float.intBitsToFloat(readFixed32());
+						}
+						position = arrayEnd;
+						value = floats;
+						break;
+					}
+					case BOOLEAN_ARRAY << 3 | LENGTH_DELIMITED: {
+						int arrayEnd = readLength();
+						boolean[] booleans = new boolean[arrayEnd - position];
+						for(int k = 0; k < booleans.length; ++k) {
+							booleans[k] = bytes[position++] != 0;
+						}
+						value = booleans;
+						break;
+					}
+					case CHAR_ARRAY << 3 | LENGTH_DELIMITED: {
+						int arrayEnd = readLength();
+						char[] chars = new char[countVarints(arrayEnd)];
+						for(int k = 0; k < chars.length; ++k) {
+							chars[k] = (char) readVarint();
+						}
+						value = chars;
+						break;
+					}
+					case STRING_ARRAY << 3 | LENGTH_DELIMITED: {
+						int arrayEnd = readLength();
+						List<String> strings = new ArrayList<String>();
+						while(position < arrayEnd) {
+							int field = readVarint();
+							if(field == (ARRAY_STRING << 3 | LENGTH_DELIMITED)) {
+								strings.add(readString());
+							} else if(field == (ARRAY_NULL << 3 | VARINT)) {
+								readVarint();
+								strings.add(null);
+							} else {
+								skip(field & 7);
+							}
+						}
+						value = strings.toArray(new String[strings.size()]);
+						break;
+					}
+					case SERIALIZED << 3 | LENGTH_DELIMITED:
+						int serializedEnd = readLength();
+						value = new ObjectInputStream(new ByteArrayInputStream(bytes, position, serializedEnd - position)).readObject();
+						position = serializedEnd;
+						break;
+					default:
+						skip(key & 7);
+				}
+			}
+			if(position != end) {
+				throw new IOException("Malformed compact value");
+			}
+			return value;
+		}
+
+		/**
+		 * Counts the varints from the current position to end, one per byte below 0x80
+		 */
+		private int countVarints(int end) throws IOException {
+			int count = 0;
+			for(int i = position; i < end; ++i) {
+				if(bytes[i] >= 0) {
+					++count;
+				}
+			}
+			if(end > position && bytes[end - 1] < 0) {
+				throw new IOException("Malformed packed array");
+			}
+			return count;
+		}
+		
+		/**
+		 * Skips a field of the given wire type
+		 */
+		void skip(int wireType) throws IOException {
+			switch(wireType) {
+				case VARINT:
+					readVarint64();
+					break;
+				case FIXED64:
+					need(8);
+					position += 8;
+					break;
+				case LENGTH_DELIMITED:
+					position = readLength();
+					break;
+				case FIXED32:
+					need(4);
+					position += 4;
+					break;
+				default:
+					throw new IOException("Unknown wire type " + wireType);
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package implementation;
+
+import interfaces.ClientRequestHandler;
+import interfaces.Invoker;
+import model.AbsoluteObjectReference;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * The classes compiled by the {@link StubCompiler} for an interface
+ * description. Proxies and invokers are plain instances of the
+ * compiled classes: calls on them run the generated code directly.
+ */
+public final class CompiledStubs {
+
+	private final Class<?> remoteInterface;
+
+	private final Constructor<?> client;
+
+	private final Constructor<?> invoker;
+
+	CompiledStubs(Class<?> remoteInterface, Class<?> clientClass, Class<?> invokerClass) {
+		this.remoteInterface = remoteInterface;
+		try {
+			this.client = clientClass.getConstructor(AbsoluteObjectReference.class, ClientRequestHandler.class);
+			this.invoker = invokerClass.getConstructor(remoteInterface);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("generated classes lack their constructors", e);
+		}
+	}
+
+	/**
+	 * @return the compiled remote interface, implemented by the proxies
+	 */
+	public Class<?> getInterface() {
+		return remoteInterface;
+	}
+
+	/**
+	 * Creates a client proxy sending through the default handler
+	 * @param aor the reference of the remote object
+	 * @return the proxy, an instance of {@link #getInterface()}
+	 */
+	public Object newClient(AbsoluteObjectReference aor) {
+		return newClient(aor, ClientRequestHandlerImpl.getInstance());
+	}
+
+	/**
+	 * Creates a client proxy
+	 * @param aor the reference of the remote object
+	 * @param handler the handler used to send the requests
+	 * @return the proxy, an instance of {@link #getInterface()}
+	 */
+	public Object newClient(AbsoluteObjectReference aor, ClientRequestHandler handler) {
+		return newInstance(client, aor, handler);
+	}
+
+	/**
+	 * Creates an invoker executing the invocations on an object
+	 * @param object the object, an instance of {@link #getInterface()}
+	 * @return the invoker, to be registered in a server request handler
+	 */
+	public Invoker newInvoker(Object object) {
+		return (Invoker) newInstance(invoker, remoteInterface.cast(object));
+	}
+
+	private static Object newInstance(Constructor<?> constructor, Object... arguments) {
+		try {
+			return constructor.newInstance(arguments);
+		} catch (InstantiationException | IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
@@ -2,28 +2,102 @@ package implementation;
 
 import exception.RemoteError;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Connection {
+	/**
+	 * The connection is cached and can be checked out
+	 */
+	private static final int IDLE = 0;
+	
+	/**
+	 * The connection was checked out by a request
+	 */
+	private static final int IN_USE = 1;
+	
+	/**
+	 * The socket is being closed
+	 */
+	private static final int CLOSING = 2;
+	
+	/**
+	 * The socket is closed and the connection must be discarded
+	 */
+	private static final int CLOSED = 3;
+	
+	/**
+	 * Size of the stream buffers; frames up to this size are written at once
+	 */
+	private static final int BUFFER_SIZE = 8192;
+	
 	private final Socket socket;
 	private final DataOutputStream outToServer;
 	private final DataInputStream inFromServer;
-	private long currentDeathTime = 0L;
-	private boolean used = false;
+	private volatile long currentDeathTime = 0L;
+	private final AtomicInteger state = new AtomicInteger(IDLE);
+	private final String address;
+	
+	/**
+	 * Handles of the object references already sent on this connection,
+	 * only touched by the request using it
+	 */
+	private final Map<InvocationMessage.Reference, Integer> references = new HashMap<InvocationMessage.Reference, Integer>();
+	
+	/**
+	 * True while the connection is linked into a {@link TimerWheel}
+	 */
+	volatile boolean expiring;
+	
+	/**
+	 * Next connection in the same slot of the timer wheel
+	 */
+	Connection nextExpiring;
 	
 	public Connection(String host, int port) throws RemoteError {
+		this(host, port, open(host, port));
+	}
+	
+	/**
+	 * Wraps a socket already connected to the address
+	 * @param host the host the socket was connected to
+	 * @param port the port the socket was connected to
+	 * @param socket the connected socket
+	 */
+	public Connection(String host, int port, Socket socket) throws RemoteError {
+		this.address = host + ":" + port;
+		this.socket = socket;
+		try {
+			this.outToServer = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+			this.inFromServer = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+		} catch (IOException e) {
+			throw new RemoteError(e);
+		}
+	}
+	
+	private static Socket open(String host, int port) throws RemoteError {
 		try {
-			this.socket = new Socket(host, port);
-			this.outToServer = new DataOutputStream(socket.getOutputStream());
-			this.inFromServer = new DataInputStream(socket.getInputStream());
+			return new Socket(host, port);
 		} catch (IOException e) {
 			throw new RemoteError(e);
 		}
 	}
 	
+	/**
+	 * Gets the address the connection was opened to
+	 * @return the address, as host:port
+	 */
+	public String getAddress() {
+		return address;
+	}
+	
 	/**
 	 * Gets the socket instance
 	 * @return the socket
@@ -33,11 +107,40 @@ public class Connection {
 	}
 	
 	/**
-	 * Closes the socket
+	 * Closes the socket, whatever the current state is
+	 */
+	public void close() throws IOException {
+		int current;
+		do {
+			current = state.get();
+			if(current >= CLOSING) {
+				return;
+			}
+		} while(!state.compareAndSet(current, CLOSING));
+		closeSocket();
+	}
+	
+	/**
+	 * Closes the socket only if nobody is using the connection
+	 * @return true if the connection was idle and is now closed
 	 */
-	public synchronized void close() throws IOException {
-		if(!socket.isClosed())
+	public boolean closeIfIdle() throws IOException {
+		if(!state.compareAndSet(IDLE, CLOSING)) {
+			return false;
+		}
+		closeSocket();
+		return true;
+	}
+	
+	/**
+	 * Closes the socket of a connection which is already in CLOSING state
+	 */
+	private void closeSocket() throws IOException {
+		try {
 			socket.close();
+		} finally {
+			state.set(CLOSED);
+		}
 	}
 	
 	/**
@@ -45,26 +148,30 @@ public class Connection {
 	 * @return true if its used
 	 */
 	public boolean isUsed() {
-		return used;
+		return state.get() == IN_USE;
+	}
+	
+	/**
+	 * Check if it's been closed, or is being closed
+	 * @return true if the connection can't be used anymore
+	 */
+	public boolean isClosed() {
+		return state.get() >= CLOSING;
 	}
 	
 	/**
 	 * Asks to use the connection
-	 * @return true if it was available and false if it's already in use
+	 * @return true if it was available and false if it's already in use or closed
 	 */
-	public synchronized boolean use() {
-		if(isUsed()) {
-			return false;
-		}
-		used = true;
-		return true;
+	public boolean use() {
+		return state.compareAndSet(IDLE, IN_USE);
 	}
 	
 	/**
 	 * Shows that this connection is available now
 	 */
-	public synchronized void finish() {
-		used = false;
+	public void finish() {
+		state.compareAndSet(IN_USE, IDLE);
 	}
 
 	/**
@@ -82,13 +189,22 @@ public class Connection {
 	}
 	
 	/**
-	 * gets the socket's outputStream
+	 * gets the socket's outputStream, buffered: writers must flush it
 	 * @return the socket's outputStream
 	 */
 	public DataOutputStream getOutput() {
 		return outToServer;
 	}
 	
+	/**
+	 * Gets the handles of the object references sent on this connection,
+	 * which live as long as it does
+	 * @return the handles, by reference
+	 */
+	Map<InvocationMessage.Reference, Integer> getReferences() {
+		return references;
+	}
+	
 	/**
 	 * gets the socket's inputStream
 	 * @return the socket's inputStream
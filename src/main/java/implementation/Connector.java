@@ -0,0 +1,211 @@
+package implementation;
+
+import model.SocketOptionsProfile;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Opens sockets to a host the happy eyeballs way: its addresses,
+ * taken from an {@link AddressCache}, are tried alternating IPv6 and
+ * IPv4, a new attempt starting whenever the previous one fails or
+ * takes longer than the attempt delay, and the first socket connected
+ * wins. The others are closed as they connect.
+ */
+class Connector {
+
+	/**
+	 * Default time (in milliseconds) to wait for a connection
+	 */
+	static final long DEFAULT_CONNECT_TIMEOUT = 10000L;
+
+	/**
+	 * Default time (in milliseconds) given to an attempt before starting the next
+	 */
+	static final long DEFAULT_ATTEMPT_DELAY = 250L;
+
+	/**
+	 * Runs the attempts, shared by all connectors
+	 */
+	private static final ExecutorService attempts = Executors.newCachedThreadPool(task -> {
+		Thread thread = new Thread(task, "connector");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AddressCache addresses;
+
+	private final long connectTimeout;
+
+	private final long attemptDelay;
+
+	Connector() {
+		this(new AddressCache(), DEFAULT_CONNECT_TIMEOUT, DEFAULT_ATTEMPT_DELAY);
+	}
+
+	/**
+	 * @param addresses cache of the resolved host names
+	 * @param connectTimeout time (in milliseconds) to wait for a connection
+	 * @param attemptDelay time (in milliseconds) given to an attempt before starting the next
+	 */
+	Connector(AddressCache addresses, long connectTimeout, long attemptDelay) {
+		this.addresses = addresses;
+		this.connectTimeout = connectTimeout;
+		this.attemptDelay = attemptDelay;
+	}
+
+	/**
+	 * Connects to the host
+	 * @param host the host name or literal address
+	 * @param port the port
+	 * @param options options of the socket
+	 * @return the connected socket
+	 * @throws IOException if no address of the host can be reached in time
+	 */
+	Socket connect(String host, int port, SocketOptionsProfile options) throws IOException {
+		List<InetAddress> candidates = interleave(addresses.resolve(host));
+		try {
+			if(candidates.size() == 1) {
+				return open(candidates.get(0), port, connectTimeout, options);
+			}
+			return race(candidates, port, options);
+		} catch (IOException e) {
+			addresses.invalidate(host);
+			throw e;
+		}
+	}
+
+	/**
+	 * Connects to the addresses in order, staggered, returning the first socket connected
+	 */
+	private Socket race(List<InetAddress> candidates, int port, SocketOptionsProfile options) throws IOException {
+		BlockingQueue<Object> results = new LinkedBlockingQueue<Object>();
+		AtomicBoolean finished = new AtomicBoolean();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeout);
+		int started = 0;
+		int failed = 0;
+		IOException error = null;
+		try {
+			start(candidates.get(started++), port, options, results, finished);
+			while(true) {
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if(remaining <= 0) {
+					throw new SocketTimeoutException("connect timed out");
+				}
+				Object result = results.poll(started < candidates.size() ? Math.min(attemptDelay, remaining) : remaining,
+						TimeUnit.MILLISECONDS);
+				if(result instanceof Socket) {
+					return (Socket) result;
+				}
+				if(result instanceof IOException) {
+					error = (IOException) result;
+					if(++failed == candidates.size()) {
+						throw error;
+					}
+				}
+				if(started < candidates.size()) {
+					start(candidates.get(started++), port, options, results, finished);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while connecting", e);
+		} finally {
+			finished.set(true);
+			closeLosers(results);
+		}
+	}
+
+	private void start(InetAddress address, int port, SocketOptionsProfile options, BlockingQueue<Object> results, AtomicBoolean finished) {
+		attempts.execute(() -> {
+			try {
+				results.add(open(address, port, connectTimeout, options));
+			} catch (IOException e) {
+				results.add(e);
+			}
+			if(finished.get()) {
+				closeLosers(results);
+			}
+		});
+	}
+
+	/**
+	 * Closes the sockets connected after the race was decided
+	 */
+	private static void closeLosers(BlockingQueue<Object> results) {
+		Object result;
+		while((result = results.poll()) != null) {
+			if(result instanceof Socket) {
+				try {
+					((Socket) result).close();
+				} catch (IOException e) {
+					// never used
+				}
+			}
+		}
+	}
+
+	private static Socket open(InetAddress address, int port, long timeout, SocketOptionsProfile options) throws IOException {
+		Socket socket = new Socket();
+		try {
+			configure(socket, options);
+			socket.connect(new InetSocketAddress(address, port), (int) Math.min(timeout, Integer.MAX_VALUE));
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		return socket;
+	}
+
+	/**
+	 * Sets the options of a socket. Buffer sizes are best set before connecting
+	 * @param socket the socket
+	 * @param options the options
+	 */
+	static void configure(Socket socket, SocketOptionsProfile options) throws IOException {
+		socket.setTcpNoDelay(options.isTcpNoDelay());
+		socket.setKeepAlive(options.isKeepAlive());
+		socket.setSoLinger(options.getLingerSeconds() >= 0, Math.max(0, options.getLingerSeconds()));
+		if(options.getSendBufferSize() > 0) {
+			socket.setSendBufferSize(options.getSendBufferSize());
+		}
+		if(options.getReceiveBufferSize() > 0) {
+			socket.setReceiveBufferSize(options.getReceiveBufferSize());
+		}
+	}
+
+	/**
+	 * Orders the addresses alternating families, starting with the family
+	 * of the first address, keeping the resolver order within each family
+	 */
+	private static List<InetAddress> interleave(InetAddress[] resolved) {
+		List<InetAddress> first = new ArrayList<InetAddress>(resolved.length);
+		List<InetAddress> second = new ArrayList<InetAddress>(resolved.length);
+		boolean firstIsV6 = resolved[0] instanceof Inet6Address;
+		for(InetAddress address : resolved) {
+			((address instanceof Inet6Address) == firstIsV6 ? first : second).add(address);
+		}
+		List<InetAddress> ordered = new ArrayList<InetAddress>(resolved.length);
+		for(int i = 0; i < first.size() || i < second.size(); ++i) {
+			if(i < first.size()) {
+				ordered.add(first.get(i));
+			}
+			if(i < second.size()) {
+				ordered.add(second.get(i));
+			}
+		}
+		return ordered;
+	}
+}
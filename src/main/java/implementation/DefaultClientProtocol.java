@@ -2,57 +2,148 @@ package implementation;
 
 import exception.RemoteError;
 import interfaces.ClientProtocolPlugin;
+import model.DrainReport;
+import model.OperationOptions;
+import model.PriorityClass;
+import model.SocketOptionsProfile;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Represents the default protocol to the Client Request Handler,
  * which handles networking synchronous communication
  * inside client applications
  * 
- * Allows to set limit the number of threads connecting to server and
- * the time which connections will be cached
+ * Allows to set limit the number of threads connecting to server,
+ * the time which connections will be cached and how many calls may
+ * wait for a thread, along with what happens to calls beyond that
  * 
  * @author victoragnez
  */
 public class DefaultClientProtocol implements ClientProtocolPlugin {
 	
+	/**
+	 * Default number of calls which may wait for a thread
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+	
+	/**
+	 * Default time (in milliseconds) a call waits for room in a full queue
+	 */
+	public static final long DEFAULT_BLOCK_TIMEOUT = 5000L;
+	
+	/**
+	 * Default time (in milliseconds) {@link #shutdown()} lets the calls in flight finish
+	 */
+	public static final long DEFAULT_DRAIN_TIMEOUT = 5000L;
+	
+	/**
+	 * Most threads closing connections at once when draining
+	 */
+	private static final int CLOSE_THREADS = 16;
+	
+	/**
+	 * Cost added to the size of every message when sharing the threads
+	 * across priority classes, standing for the work of a call besides its bytes
+	 */
+	private static final long CALL_COST = 256L;
+	
 	/**
 	 * ExecutorService to limit number of threads connecting to server
+	 * and the number of calls waiting for them
 	 */
-	private final ExecutorService tasksExecutor;
+	private final ThreadPoolExecutor tasksExecutor;
 	
 	/**
-	 * Maps the address to the available connections
+	 * Calls waiting for a thread, by priority class
 	 */
-	private final Map<String, Queue<Connection> > cache = new ConcurrentHashMap<String, Queue<Connection> >();
+	private final WeightedFairQueue queue;
 	
 	/**
-	 * Queue with available connections to close the old unused ones.
+	 * Sum, count and maximum of the times calls waited in the queue, and rejected calls
 	 */
-	private final Queue<WrappedConnection> oldConnections = new ConcurrentLinkedQueue<WrappedConnection>();
+	private final LongAdder totalQueueWait = new LongAdder();
+	private final LongAdder dequeuedCalls = new LongAdder();
+	private final AtomicLong maxQueueWait = new AtomicLong();
+	private final LongAdder rejectedCalls = new LongAdder();
 	
 	/**
-	 * Maximum time a connection can be alive and not used
+	 * Default number of ticks of the idle timer wheel in the time limit
 	 */
-	private final long timeLimit;
+	private static final long TICKS_PER_TIME_LIMIT = 64L;
+	
+	/**
+	 * Maps the address to the available connections and its request rate
+	 */
+	private final Map<String, Endpoint> cache = new ConcurrentHashMap<String, Endpoint>();
+	
+	/**
+	 * Opens the connections, resolving the hosts through a shared cache
+	 */
+	private final Connector connector = new Connector();
+	
+	/**
+	 * Options of the sockets to the addresses which don't set their own
+	 */
+	private volatile SocketOptionsProfile socketOptions = SocketOptionsProfile.DEFAULT;
+	
+	/**
+	 * Largest request or reply (in bytes) to the addresses which don't set their own
+	 */
+	private volatile int maxFrameSize = Frames.DEFAULT_MAX_SIZE;
+	
+	/**
+	 * Closes the connections left idle for too long
+	 */
+	private final TimerWheel idleConnections;
+	
+	/**
+	 * The task advancing the wheel, on a thread of the pool
+	 */
+	private final Future<?> reaper;
 	
 	/**
-	 * Avoids racing when adding a new queue to the cache
+	 * Maps the address to the latencies of its hedged calls
 	 */
-	private final WrappedPut synchronizedPut = new WrappedPut();
+	private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<String, LatencyWindow>();
+	
+	/**
+	 * Maximum time a connection can be alive and not used. Connections to
+	 * busy addresses are closed sooner, see {@link Endpoint#idleTimeout(long)}
+	 */
+	private final long timeLimit;
 	
 	/**
 	 * Default constructor with maximum number of threads set to 1000
@@ -67,7 +158,7 @@ public class DefaultClientProtocol implements ClientProtocolPlugin {
 	 * @param maxConnections maximum number of threads
 	 */
 	public DefaultClientProtocol(int maxConnections) {
-		this(maxConnections, 10000000L);
+		this(maxConnections, 10000L);
 	}
 	
 	/**
@@ -76,182 +167,770 @@ public class DefaultClientProtocol implements ClientProtocolPlugin {
 	 * @param maxConnections maximum number of threads
 	 */
 	public DefaultClientProtocol(int maxConnections, long timeLimit) {
-		if(timeLimit < 0) {
-			throw new IllegalArgumentException("timeLimit cannot be negative, got " + timeLimit);
-		}
-		if(maxConnections <= 0) {
-			throw new IllegalArgumentException("maxConnections must be positive, got " + maxConnections);
-		}
-		tasksExecutor = Executors.newFixedThreadPool(maxConnections + 1);
-		tasksExecutor.submit(() -> deleteOldConnections());
-		this.timeLimit = timeLimit; 
+		this(maxConnections, timeLimit, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.BLOCK, DEFAULT_BLOCK_TIMEOUT);
 	}
 	
-	/*
-	 * Delete connections that have not been used after timeLimit milliseconds
+	/**
+	 * Creates the client protocol with maximum number of threads, the time limit
+	 * (in milliseconds) of keeping connections alive to cache and a bounded queue
+	 * of calls waiting for a thread
+	 * @param maxConnections maximum number of threads
+	 * @param timeLimit time limit of caching connections
+	 * @param queueCapacity maximum number of calls waiting for a thread
+	 * @param overflowPolicy what to do with calls when the queue is full
+	 * @param blockTimeout time (in milliseconds) a call waits for room in the queue,
+	 * used by {@link OverflowPolicy#BLOCK}
+	 */
+	public DefaultClientProtocol(int maxConnections, long timeLimit, int queueCapacity,
+			OverflowPolicy overflowPolicy, long blockTimeout) {
+		this(ClientProtocolLimits.DEFAULT.maxConnections(maxConnections).timeLimit(timeLimit)
+				.queueCapacity(queueCapacity).overflow(overflowPolicy, blockTimeout));
+	}
+	
+	/**
+	 * Creates the client protocol with the given limits
+	 * @param limits the threads, connection caching time and queue of the protocol
+	 */
+	public DefaultClientProtocol(ClientProtocolLimits limits) {
+		int maxConnections = limits.getMaxConnections();
+		queue = new WeightedFairQueue(limits.getQueueCapacity(), maxConnections);
+		tasksExecutor = new ThreadPoolExecutor(maxConnections + 1, maxConnections + 1, 0L, TimeUnit.MILLISECONDS,
+				queue, rejectionHandler(limits.getOverflowPolicy(), limits.getBlockTimeout()));
+		this.timeLimit = limits.getTimeLimit();
+		this.idleConnections = new TimerWheel(timeLimit / TICKS_PER_TIME_LIMIT, this::expired);
+		this.reaper = tasksExecutor.submit(() -> reapIdleConnections());
+	}
+	
+	/**
+	 * Creates the handler of calls which don't fit in the queue,
+	 * or are sent after the protocol started shutting down
 	 */
-	private void deleteOldConnections() {
-		while(true) {
-			WrappedConnection w = oldConnections.peek();
-			if(w == null) {
+	private RejectedExecutionHandler rejectionHandler(OverflowPolicy overflowPolicy, long blockTimeout) {
+		switch(overflowPolicy) {
+		case CALLER_RUNS:
+			return (task, executor) -> {
+				rejectIfShutdown(executor);
+				task.run();
+			};
+		case FAIL_FAST:
+			return (task, executor) -> {
+				rejectIfShutdown(executor);
+				rejectedCalls.increment();
+				throw new RejectedExecutionException("request queue is full");
+			};
+		case BLOCK:
+			return (task, executor) -> {
+				rejectIfShutdown(executor);
 				try {
-					Thread.sleep(timeLimit);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-					break;
-				}
-				continue;
-			}
-			long now = System.currentTimeMillis();
-			if(w.getDeathTime() < now) {
-				w = oldConnections.poll();
-				if(w != null) {
-					Connection con = w.getConnection();
-					if(!con.isUsed() && con.getCurrentDeathTime() < now) {
-						if(!con.use()) {
-							continue;
-						}
-						try {
-							con.close();
-						} catch (IOException e) {
-							e.printStackTrace();
-						}
+					if(executor.getQueue().offer(task, blockTimeout, TimeUnit.MILLISECONDS)) {
+						return;
 					}
-				}
-			} else {
-				try {
-					Thread.sleep(w.getDeathTime() - now);
 				} catch (InterruptedException e) {
-					e.printStackTrace();
-					break;
+					Thread.currentThread().interrupt();
 				}
+				rejectedCalls.increment();
+				throw new RejectedExecutionException("request queue is full");
+			};
+		default:
+			throw new IllegalArgumentException("unknown overflow policy " + overflowPolicy);
+		}
+	}
+	
+	private void rejectIfShutdown(ThreadPoolExecutor executor) {
+		if(executor.isShutdown()) {
+			rejectedCalls.increment();
+			throw new RejectedExecutionException("protocol is shut down");
+		}
+	}
+	
+	/**
+	 * Queues a call to be sent by a thread of the pool
+	 * @param priority the class of the call
+	 * @param msg the message, whose size weighs the call
+	 * @param task sends the message
+	 * @param completion where the call is put once done, may be null
+	 * @return the call
+	 * @throws RejectedExecutionException if the queue is full or the protocol is shut down
+	 */
+	private Call submit(PriorityClass priority, ByteArrayOutputStream msg, Callable<ByteArrayInputStream> task,
+			BlockingQueue<Future<ByteArrayInputStream>> completion) {
+		Call call = new Call(timed(task), priority, CALL_COST + msg.size(), completion);
+		tasksExecutor.execute(call);
+		return call;
+	}
+	
+	/**
+	 * Wraps a call to record how long it waited for a thread
+	 */
+	private <T> Callable<T> timed(Callable<T> task) {
+		long enqueued = System.nanoTime();
+		return () -> {
+			long waited = System.nanoTime() - enqueued;
+			totalQueueWait.add(waited);
+			dequeuedCalls.increment();
+			maxQueueWait.accumulateAndGet(waited, Math::max);
+			return task.call();
+		};
+	}
+	
+	/**
+	 * Sets the share of the threads given to the calls of a priority class
+	 * while calls of other classes are waiting too. A class of weight 8
+	 * gets four times the threads a class of weight 2 gets, counting the
+	 * bytes sent; defaults to {@link PriorityClass#getDefaultWeight()}
+	 * @param priority the class
+	 * @param weight the weight of the class, relative to the others
+	 */
+	public void setWeight(PriorityClass priority, int weight) {
+		queue.setWeight(priority, weight);
+	}
+	
+	/**
+	 * Keeps connections (and the threads sending on them) free for the calls
+	 * of a priority class, so a burst of other calls can't take them all.
+	 * Starts all the threads of the pool, which reservations rely on
+	 * @param priority the class
+	 * @param connections the number of connections reserved, 0 for none
+	 * @throws IllegalArgumentException if the reservations add up to more than the maximum number of connections
+	 */
+	public void reserveConnections(PriorityClass priority, int connections) {
+		queue.reserve(priority, connections);
+		if(connections > 0) {
+			tasksExecutor.prestartAllCoreThreads();
+		}
+	}
+	
+	/**
+	 * Sets the options of the sockets opened from now on
+	 * @param socketOptions the options of the sockets to every address without its own
+	 */
+	public void setSocketOptions(SocketOptionsProfile socketOptions) {
+		this.socketOptions = socketOptions;
+	}
+	
+	/**
+	 * Sets the options of the sockets opened from now on to an address
+	 * @param host the host of the address
+	 * @param port the port of the address
+	 * @param socketOptions the options, null to use the ones of the protocol
+	 */
+	public void setSocketOptions(String host, int port, SocketOptionsProfile socketOptions) {
+		cache.computeIfAbsent(host + ":" + port, k -> new Endpoint()).socketOptions = socketOptions;
+	}
+	
+	/**
+	 * Sets the largest request or reply of the calls, lowered by the limits
+	 * the operations declare. Larger requests fail before taking a thread;
+	 * larger replies fail as soon as their length is read, and the connection
+	 * is closed along with the idle ones to the same address
+	 * @param maxFrameSize the limit in bytes, {@value Frames#DEFAULT_MAX_SIZE} by default
+	 */
+	public void setMaxFrameSize(int maxFrameSize) {
+		if(maxFrameSize <= 0) {
+			throw new IllegalArgumentException("maxFrameSize must be positive, got " + maxFrameSize);
+		}
+		this.maxFrameSize = maxFrameSize;
+	}
+	
+	/**
+	 * Sets the largest request or reply of the calls to an address
+	 * @param host the host of the address
+	 * @param port the port of the address
+	 * @param maxFrameSize the limit in bytes, 0 to use the one of the protocol
+	 * @see #setMaxFrameSize(int)
+	 */
+	public void setMaxFrameSize(String host, int port, int maxFrameSize) {
+		if(maxFrameSize < 0) {
+			throw new IllegalArgumentException("maxFrameSize cannot be negative, got " + maxFrameSize);
+		}
+		cache.computeIfAbsent(host + ":" + port, k -> new Endpoint()).maxFrameSize = maxFrameSize;
+	}
+	
+	/**
+	 * Gets the largest frame of a call
+	 */
+	private int limit(String host, int port, OperationOptions options) {
+		Endpoint endpoint = cache.get(host + ":" + port);
+		int max = endpoint == null || endpoint.maxFrameSize == 0 ? maxFrameSize : endpoint.maxFrameSize;
+		return Frames.limit(options, max);
+	}
+	
+	/**
+	 * @return the number of calls waiting for a thread
+	 */
+	public int getQueueDepth() {
+		return tasksExecutor.getQueue().size();
+	}
+	
+	/**
+	 * @param priority a priority class
+	 * @return the number of calls of the class waiting for a thread
+	 */
+	public int getQueueDepth(PriorityClass priority) {
+		return queue.size(priority);
+	}
+	
+	/**
+	 * @return the mean time (in nanoseconds) calls waited for a thread
+	 */
+	public long getAverageQueueWait() {
+		long count = dequeuedCalls.sum();
+		return count == 0 ? 0L : totalQueueWait.sum() / count;
+	}
+	
+	/**
+	 * @return the longest time (in nanoseconds) a call waited for a thread
+	 */
+	public long getMaxQueueWait() {
+		return maxQueueWait.get();
+	}
+	
+	/**
+	 * @return the number of calls failed because the queue was full
+	 */
+	public long getRejectedCalls() {
+		return rejectedCalls.sum();
+	}
+	
+	/**
+	 * Advances the idle timer wheel until the protocol is shut down
+	 */
+	private void reapIdleConnections() {
+		while(!tasksExecutor.isShutdown()) {
+			idleConnections.advance();
+			try {
+				Thread.sleep(Math.max(1L, idleConnections.untilNextTick()));
+			} catch (InterruptedException e) {
+				break;
 			}
 		}
 	}
+	
+	/**
+	 * Forgets a connection closed for being idle
+	 */
+	private void expired(Connection con) {
+		Endpoint endpoint = cache.get(con.getAddress());
+		if(endpoint != null) {
+			endpoint.available.remove(con);
+			endpoint.open.remove(con);
+		}
+	}
 
 	/**
-	 * Sends the data using TCP protocol
+	 * Sends the data using TCP protocol, as a call of the normal priority class
 	 */
 	@Override
 	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg) throws RemoteError {
+		return send(host, port, msg, OperationOptions.DEFAULT);
+	}
+	
+	private ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg, PriorityClass priority,
+			int limit) throws RemoteError {
 		try {
-			return tasksExecutor.submit(() -> sendAndCache(host, port, msg) ).get();
-		} catch (InterruptedException | ExecutionException e1) {
+			return submit(priority, msg, () -> sendAndCache(host, port, msg, limit), null).get();
+		} catch (ExecutionException e1) {
+			throw unwrap(e1);
+		} catch (InterruptedException | RejectedExecutionException | CancellationException e1) {
 			throw new RemoteError(e1);
 		}
 	}
 	
+	/**
+	 * Sends the data using TCP protocol, in the priority class of the operation.
+	 * Calls of hedged operations which take longer than the 95th percentile
+	 * observed for the address are sent again on another connection, and the
+	 * first reply is returned. Requests larger than the frame size limit fail at once
+	 */
+	@Override
+	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg, OperationOptions options) throws RemoteError {
+		int limit = limit(host, port, options);
+		try {
+			Frames.checkLength(msg.size(), limit);
+		} catch (ProtocolException e) {
+			throw new RemoteError("request not sent", e);
+		}
+		if(!options.isHedged()) {
+			return send(host, port, msg, options.getPriority(), limit);
+		}
+		
+		LatencyWindow window = latencies.computeIfAbsent(host + ":" + port, k -> new LatencyWindow());
+		BlockingQueue<Future<ByteArrayInputStream>> attempts = new LinkedBlockingQueue<Future<ByteArrayInputStream>>();
+		Callable<ByteArrayInputStream> attempt = () -> sendAndCache(host, port, msg, limit);
+		long start = System.nanoTime();
+		// the first attempt records its latency whether it wins, loses to the hedge or fails,
+		// only recording the winners would pull the percentile down to the hedged latency
+		Callable<ByteArrayInputStream> primary = () -> {
+			try {
+				return attempt.call();
+			} finally {
+				window.record(System.nanoTime() - start);
+			}
+		};
+		
+		try {
+			submit(options.getPriority(), msg, primary, attempts);
+			int pending = 1;
+			
+			long hedgeDelay = window.p95();
+			Future<ByteArrayInputStream> done = hedgeDelay < 0 ? attempts.take() : attempts.poll(hedgeDelay, TimeUnit.NANOSECONDS);
+			if(done == null) {
+				try {
+					submit(options.getPriority(), msg, attempt, attempts);
+					++pending;
+				} catch (RejectedExecutionException e1) {
+					// no room for the hedge, keep waiting for the first attempt
+				}
+				done = attempts.take();
+			}
+			
+			while(true) {
+				--pending;
+				try {
+					return done.get();
+				} catch (ExecutionException e1) {
+					if(pending == 0) {
+						throw unwrap(e1);
+					}
+				}
+				done = attempts.take();
+			}
+		} catch (InterruptedException | RejectedExecutionException | CancellationException e1) {
+			throw new RemoteError(e1);
+		}
+	}
+	
+	/**
+	 * Gets the error thrown by a task
+	 * @param e the exception wrapping the error
+	 * @return the error
+	 */
+	private static RemoteError unwrap(ExecutionException e) {
+		if(e.getCause() instanceof RemoteError) {
+			return (RemoteError) e.getCause();
+		}
+		return new RemoteError(e.getCause());
+	}
+	
 	/**
 	 * Sends the data using a cached connection if available, and caches after
-	 * sending and receiving the server reply
+	 * sending and receiving the server reply. If the connection fails in any way, it is closed
+	 * along with the idle connections to the same address, which are likely stale too.
+	 * The object reference of an {@link InvocationMessage} is sent once per
+	 * connection, and by its handle afterwards. A reply with a wrong header
+	 * or over the limit fails the connection the same way, before it is read
 	 * 
 	 * @param host the host to send the data
 	 * @param port the port to send the data
 	 * @param msg the message to be sent
+	 * @param limit the largest reply accepted, in bytes
 	 * @return the server reply
 	 * @throws RemoteError if any error occur
 	 */
-	private ByteArrayInputStream sendAndCache(String host, int port, ByteArrayOutputStream msg) throws RemoteError {
-		Connection con = null;
+	private ByteArrayInputStream sendAndCache(String host, int port, ByteArrayOutputStream msg, int limit) throws RemoteError {
 		String fullAddr = host + ":" + port;
+		Endpoint endpoint = cache.computeIfAbsent(fullAddr, k -> new Endpoint());
+		long idleTimeout = endpoint.idleTimeout(timeLimit);
+		Queue<Connection> available = endpoint.available;
 		
-		while(cache.get(fullAddr) != null && (con = cache.get(fullAddr).poll()) != null) {
-			if(!con.use()) {
-				con = null;
-				continue;
-			}
-		}
-		
-		if(con == null) {
-			con = new Connection(host, port);
-			con.use();
-		}
+		Connection con = endpoint.checkout(host, port, connector, socketOptions);
 		
 		DataOutputStream outToServer = con.getOutput();
 		DataInputStream inFromServer = con.getInput();
 		ByteArrayInputStream ret;
 		
-		byte[] byteMsg = msg.toByteArray();
-		
+		// set once the reply is read, any other way out leaves the connection in the middle of a frame
+		boolean replied = false;
 		try {
-			outToServer.writeInt(byteMsg.length);
-			outToServer.write(byteMsg);
+			// one write for the header, length and message, which Nagle's algorithm can't split
+			int codec = Frames.codecOf(msg);
+			Frames.writeHeader(outToServer, codec);
+			if(msg instanceof InvocationMessage) {
+				((InvocationMessage) msg).writeFrame(outToServer, con.getReferences());
+			} else {
+				outToServer.writeInt(msg.size());
+				msg.writeTo(outToServer);
+			}
+			outToServer.flush();
 			
-			int length = inFromServer.readInt();
+			int length = Frames.readLength(inFromServer, limit, codec);
 			byte[] byteAns = new byte[length];
 			
 			inFromServer.readFully(byteAns, 0, byteAns.length);
 			ret = new ByteArrayInputStream(byteAns);
+			replied = true;
 			
 		} catch (IOException e) {
 			throw new RemoteError(e);
+		} finally {
+			if(!replied) {
+				evict(con, endpoint);
+			}
 		}
 		
-		if(cache.get(fullAddr) == null)
-			synchronizedPut.put(fullAddr);
-		
-		long newDeathTime = System.currentTimeMillis() + timeLimit;
-
+		con.setCurrentDeathTime(System.currentTimeMillis() + idleTimeout);
 		con.finish();
-		con.setCurrentDeathTime(newDeathTime);
-		cache.get(fullAddr).add(con);
-		
-		WrappedConnection w = new WrappedConnection(newDeathTime, con);
-		oldConnections.add(w);
+		available.add(con);
+		idleConnections.schedule(con);
 		
 		return ret;
 	}
 	
 	/**
-	 * Stop all threads and closes sockets
-	 * @throws RemoteError exception if any error occurs
+	 * Closes a broken connection and the idle ones to the same address
+	 * @param broken the connection which failed
+	 * @param endpoint the address of the connection
+	 */
+	private void evict(Connection broken, Endpoint endpoint) {
+		endpoint.open.remove(broken);
+		try {
+			broken.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		Connection con;
+		while((con = endpoint.available.poll()) != null) {
+			try {
+				if(con.closeIfIdle()) {
+					endpoint.open.remove(con);
+				}
+			} catch (IOException e) {
+				endpoint.open.remove(con);
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Drains the protocol, waiting up to {@value #DEFAULT_DRAIN_TIMEOUT} ms
+	 * for the calls in flight
+	 * @throws RemoteError if a connection failed to close, after closing all the others
+	 * @see #drain(long, TimeUnit)
 	 */
 	public void shutdown() throws RemoteError {
-		tasksExecutor.shutdownNow();
-		while(!oldConnections.isEmpty()) {
-			WrappedConnection current = oldConnections.poll();
-			if(current != null) {
+		DrainReport report = drain(DEFAULT_DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+		RemoteError error = null;
+		for(DrainReport.EndpointReport endpoint : report.getEndpoints().values()) {
+			for(IOException e : endpoint.getErrors()) {
+				if(error == null) {
+					error = new RemoteError("could not close every connection: " + report, e);
+				} else {
+					error.addSuppressed(e);
+				}
+			}
+		}
+		if(error != null) {
+			throw error;
+		}
+	}
+	
+	/**
+	 * Shuts the protocol down gracefully: new calls are rejected at once,
+	 * the calls queued or being sent may finish until the deadline, then
+	 * the ones left are cancelled and every connection is closed, those
+	 * in use included, several at a time
+	 * @param timeout the time the calls in flight may take to finish
+	 * @param unit the unit of the timeout
+	 * @return whether the calls finished in time, and the close results of each address
+	 */
+	public DrainReport drain(long timeout, TimeUnit unit) {
+		tasksExecutor.shutdown();
+		reaper.cancel(true);
+		boolean drained;
+		try {
+			drained = tasksExecutor.awaitTermination(timeout, unit);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			drained = false;
+		}
+		
+		int abandoned = 0;
+		if(!drained) {
+			// blocked on sockets, the calls being sent only stop once their connections are closed
+			abandoned = tasksExecutor.getActiveCount();
+			for(Runnable waiting : tasksExecutor.shutdownNow()) {
+				if(waiting instanceof Future) {
+					((Future<?>) waiting).cancel(false);
+				}
+				++abandoned;
+			}
+		}
+		
+		return new DrainReport(drained, abandoned, closeAll());
+	}
+	
+	/**
+	 * Closes every connection opened by the protocol, in parallel
+	 * @return the close results, by address
+	 */
+	private Map<String, DrainReport.EndpointReport> closeAll() {
+		Map<String, List<Connection>> connections = new TreeMap<String, List<Connection>>();
+		int count = 0;
+		for(Map.Entry<String, Endpoint> entry : cache.entrySet()) {
+			List<Connection> open = entry.getValue().closeAll();
+			if(!open.isEmpty()) {
+				connections.put(entry.getKey(), open);
+				count += open.size();
+			}
+		}
+		
+		Map<String, DrainReport.EndpointReport> reports = new LinkedHashMap<String, DrainReport.EndpointReport>();
+		if(count == 0) {
+			return reports;
+		}
+		ExecutorService closer = Executors.newFixedThreadPool(Math.min(CLOSE_THREADS, count), task -> {
+			Thread thread = new Thread(task, "connection closer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			Map<String, List<Future<IOException>>> results = new TreeMap<String, List<Future<IOException>>>();
+			for(Map.Entry<String, List<Connection>> entry : connections.entrySet()) {
+				List<Future<IOException>> closing = new ArrayList<Future<IOException>>(entry.getValue().size());
+				for(Connection con : entry.getValue()) {
+					closing.add(closer.submit(() -> {
+						try {
+							con.close();
+							return null;
+						} catch (IOException e) {
+							return e;
+						}
+					}));
+				}
+				results.put(entry.getKey(), closing);
+			}
+			for(Map.Entry<String, List<Future<IOException>>> entry : results.entrySet()) {
+				int closed = 0;
+				List<IOException> errors = new ArrayList<IOException>();
+				for(Future<IOException> result : entry.getValue()) {
+					IOException error = await(result);
+					if(error == null) {
+						++closed;
+					} else {
+						errors.add(error);
+					}
+				}
+				reports.put(entry.getKey(), new DrainReport.EndpointReport(entry.getKey(), closed, errors));
+			}
+		} finally {
+			closer.shutdown();
+		}
+		return reports;
+	}
+	
+	/**
+	 * Waits for a connection to close, even if interrupted
+	 * @return the error closing it, null if there was none
+	 */
+	private static IOException await(Future<IOException> result) {
+		boolean interrupted = false;
+		try {
+			while(true) {
 				try {
-					current.getConnection().close();
-				} catch (IOException e) {
-					throw new RemoteError(e);
+					return result.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					return new IOException(e.getCause());
 				}
 			}
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
 	
 	/**
-	 * Wraps connections with deathTime
-	 * 
-	 * @author victoragnez
-	 *
+	 * A call waiting for a thread in the class of its operation,
+	 * weighing as much as its message
 	 */
-	private static class WrappedConnection {
-		private final long deathTime;
-		private final Connection connection;
+	private static final class Call extends FutureTask<ByteArrayInputStream> implements WeightedFairQueue.Task {
+		private final PriorityClass priority;
+		private final long cost;
+		
+		/**
+		 * Where the call is put once done, may be null
+		 */
+		private final BlockingQueue<Future<ByteArrayInputStream>> completion;
 		
-		public WrappedConnection(long deathTime, Connection connection) {
-			this.deathTime = deathTime;
-			this.connection = connection;
+		Call(Callable<ByteArrayInputStream> task, PriorityClass priority, long cost,
+				BlockingQueue<Future<ByteArrayInputStream>> completion) {
+			super(task);
+			this.priority = priority;
+			this.cost = cost;
+			this.completion = completion;
 		}
 		
-		public long getDeathTime() {
-			return deathTime;
+		@Override
+		public PriorityClass getPriority() {
+			return priority;
 		}
 		
-		public Connection getConnection() {
-			return connection;
+		@Override
+		public long getCost() {
+			return cost;
+		}
+		
+		@Override
+		protected void done() {
+			if(completion != null) {
+				completion.add(this);
+			}
 		}
 	}
 	
 	/**
-	 * Wraps the put method to be synchronized
-	 * @author victoragnez
+	 * Idle connections to an address, the rate of its requests and
+	 * the connection being opened to it
 	 */
-	private class WrappedPut {
-		public synchronized void put(String key) {
-			if(cache.get(key) == null)
-				cache.put(key, new ConcurrentLinkedQueue<Connection>());
+	private static class Endpoint {
+		/**
+		 * A connection stays idle at most this many mean intervals between requests
+		 */
+		private static final long IDLE_INTERVALS = 64L;
+		
+		/**
+		 * Weight of the newest interval in the mean, as a right shift
+		 */
+		private static final int SMOOTHING = 3;
+		
+		private final Queue<Connection> available = new ConcurrentLinkedQueue<Connection>();
+		
+		/**
+		 * Every connection opened to the address and not closed yet, idle or in use
+		 */
+		private final Set<Connection> open = ConcurrentHashMap.newKeySet();
+		
+		/**
+		 * Set once the protocol closes the connections, so none is opened afterwards
+		 */
+		private volatile boolean closed;
+		
+		/**
+		 * Time of the last request and moving mean of the time between requests,
+		 * in nanoseconds. Updated without synchronization, as estimates
+		 */
+		private volatile long lastRequest = System.nanoTime();
+		private volatile long meanInterval = -1L;
+		
+		/**
+		 * Options of the sockets to the address, null to use the ones of the protocol
+		 */
+		private volatile SocketOptionsProfile socketOptions;
+		
+		/**
+		 * Largest request or reply to the address, 0 to use the limit of the protocol
+		 */
+		private volatile int maxFrameSize;
+		
+		/**
+		 * Completed when the connection being opened is ready, null if none is
+		 */
+		private final AtomicReference<CompletableFuture<Void>> connecting = new AtomicReference<CompletableFuture<Void>>();
+		
+		/**
+		 * Checks out an idle connection, or opens a new one. Callers finding no
+		 * idle connection while another one is being opened wait for it: if it
+		 * fails they all fail with its error without trying themselves, otherwise
+		 * they look for idle connections again and open their own if there is none.
+		 * A burst of callers against an address which is down makes a single attempt
+		 */
+		Connection checkout(String host, int port, Connector connector, SocketOptionsProfile defaults) throws RemoteError {
+			SocketOptionsProfile options = socketOptions == null ? defaults : socketOptions;
+			boolean reachable = false;
+			while(true) {
+				Connection con;
+				while((con = available.poll()) != null) {
+					if(con.use()) {
+						return con;
+					}
+					// closed by the reaper while waiting in the queue, discard it
+				}
+				
+				if(reachable) {
+					return open(host, port, connector, options, null);
+				}
+				
+				CompletableFuture<Void> pending = connecting.get();
+				if(pending == null) {
+					CompletableFuture<Void> opening = new CompletableFuture<Void>();
+					if(connecting.compareAndSet(null, opening)) {
+						return open(host, port, connector, options, opening);
+					}
+					continue;
+				}
+				
+				try {
+					pending.get();
+					reachable = true;
+				} catch (ExecutionException e) {
+					throw unwrap(e);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RemoteError(e);
+				}
+			}
+		}
+		
+		/**
+		 * Opens a connection, checked out
+		 * @param opening completed when it is ready, null if nobody waits for it
+		 */
+		private Connection open(String host, int port, Connector connector, SocketOptionsProfile options,
+				CompletableFuture<Void> opening) throws RemoteError {
+			try {
+				Connection con = new Connection(host, port, connector.connect(host, port, options));
+				con.use();
+				open.add(con);
+				if(closed) {
+					open.remove(con);
+					con.close();
+					throw new RemoteError("protocol is shut down");
+				}
+				return con;
+			} catch (IOException e) {
+				if(opening != null) {
+					opening.completeExceptionally(new RemoteError(e));
+				}
+				throw new RemoteError(e);
+			} finally {
+				if(opening != null) {
+					connecting.set(null);
+					opening.complete(null);
+				}
+			}
+		}
+		
+		/**
+		 * Stops opening connections to the address
+		 * @return the connections left open, to be closed
+		 */
+		List<Connection> closeAll() {
+			closed = true;
+			available.clear();
+			List<Connection> connections = new ArrayList<Connection>(open);
+			open.clear();
+			return connections;
+		}
+		
+		/**
+		 * Records a request and gets how long its connection may then stay idle:
+		 * the time of {@value #IDLE_INTERVALS} requests at the observed rate,
+		 * between a sixteenth of the time limit and the time limit
+		 * @param timeLimit maximum idle time, in milliseconds
+		 * @return the idle time, in milliseconds
+		 */
+		long idleTimeout(long timeLimit) {
+			long now = System.nanoTime();
+			long interval = now - lastRequest;
+			lastRequest = now;
+			long mean = meanInterval;
+			mean = mean < 0 ? interval : mean + ((interval - mean) >> SMOOTHING);
+			meanInterval = mean;
+			
+			long adaptive = TimeUnit.NANOSECONDS.toMillis(mean) * IDLE_INTERVALS;
+			return Math.min(timeLimit, Math.max(timeLimit / 16, adaptive));
 		}
 	}
 	
@@ -281,7 +960,7 @@ public class DefaultClientProtocol implements ClientProtocolPlugin {
 			outToServer.writeInt(byteMsg.length);
 			outToServer.write(byteMsg);
 			
-			int length = inFromServer.readInt();
+			int length = Frames.checkLength(inFromServer.readInt(), maxFrameSize);
 			byte[] byteAns = new byte[length];
 			
 			inFromServer.readFully(byteAns, 0, byteAns.length);
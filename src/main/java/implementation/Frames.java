@@ -0,0 +1,143 @@
+package implementation;
+
+import model.OperationOptions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.ProtocolException;
+
+/**
+ * Frames exchanged by the client protocols and the server:
+ * <pre>
+ * magic:short version:byte codec:byte length:int payload
+ * </pre>
+ * The codec is the {@link MarshallerRegistry} tag of the marshaller of
+ * the payload, 0 for the default one of the server, and a reply has the
+ * tag of its request.
+ * The magic has its high bit set, so a header can't be mistaken for
+ * the length which alone starts the frames of older clients; the server
+ * still reads those and answers them the same way. Lengths are checked
+ * against a maximum before anything is allocated, so a corrupted or
+ * hostile peer can't make a reader allocate gigabytes.
+ */
+final class Frames {
+
+	static final int MAGIC = 0xB1D0;
+
+	static final int VERSION = 1;
+
+	/**
+	 * The header of the frames marshalled with the default codec
+	 */
+	static final int HEADER = MAGIC << 16 | VERSION << 8;
+
+	/**
+	 * Default largest payload read or written, in bytes
+	 */
+	static final int DEFAULT_MAX_SIZE = 16 << 20;
+
+	private Frames() {
+	}
+
+	/**
+	 * @param first the first int of a frame
+	 * @return true if it is a header, false if it is the length of a frame of an older client
+	 */
+	static boolean isHeader(int first) {
+		return first >>> 16 == MAGIC;
+	}
+
+	/**
+	 * @param header the header of a frame
+	 * @return the codec tag of the frame
+	 */
+	static int codecOf(int header) {
+		return header & 0xFF;
+	}
+
+	/**
+	 * @param msg a message to be sent
+	 * @return the codec tag of the message, 0 unless it is an {@link InvocationMessage} which has one
+	 */
+	static int codecOf(ByteArrayOutputStream msg) {
+		return msg instanceof InvocationMessage ? ((InvocationMessage) msg).getCodec() : MarshallerRegistry.DEFAULT;
+	}
+
+	/**
+	 * Writes the header of a frame, to be followed by its length and payload
+	 * @param codec the codec tag of the payload
+	 */
+	static void writeHeader(DataOutput out, int codec) throws IOException {
+		out.writeInt(HEADER | codec);
+	}
+
+	/**
+	 * Reads the header and length of a reply
+	 * @param maxSize the largest payload accepted
+	 * @param codec the codec tag of the request
+	 * @return the length of the payload
+	 * @throws ProtocolException if the header is wrong, the reply isn't in the codec
+	 * of the request or the payload is too large, which leaves the stream in the
+	 * middle of the frame
+	 */
+	static int readLength(DataInput in, int maxSize, int codec) throws IOException {
+		checkReply(in.readInt(), codec);
+		return checkLength(in.readInt(), maxSize);
+	}
+
+	/**
+	 * Checks the header of a frame
+	 * @throws ProtocolException if it isn't a header of a supported version
+	 */
+	static void checkHeader(int header) throws ProtocolException {
+		if(!isHeader(header)) {
+			throw new ProtocolException(String.format("not a frame, header 0x%08x", header));
+		}
+		int version = header >>> 8 & 0xFF;
+		if(version != VERSION) {
+			throw new ProtocolException("unsupported frame version " + version + ", expected " + VERSION);
+		}
+	}
+
+	/**
+	 * Checks the header of a reply. A server which doesn't know the codec
+	 * of a request replies with its default one, or ignores the tag if it
+	 * predates them, and the reply can't be read with the codec of the request
+	 * @param codec the codec tag of the request
+	 * @throws ProtocolException if it isn't a header of a supported version or of the codec
+	 */
+	static void checkReply(int header, int codec) throws ProtocolException {
+		checkHeader(header);
+		if(codecOf(header) != codec) {
+			throw new ProtocolException("reply with codec " + codecOf(header) + " to a request with codec " + codec
+					+ ", which the server may not support");
+		}
+	}
+
+	/**
+	 * Checks the length of a payload
+	 * @param maxSize the largest payload accepted
+	 * @return the length
+	 * @throws ProtocolException if it is negative or too large
+	 */
+	static int checkLength(int length, int maxSize) throws ProtocolException {
+		if(length < 0 || length > maxSize) {
+			throw new ProtocolException("frame of " + (length & 0xFFFFFFFFL) + " bytes exceeds the limit of "
+					+ maxSize + " bytes");
+		}
+		return length;
+	}
+
+	/**
+	 * Gets the largest frame a call may send or receive
+	 * @param options the options of the operation, whose limit applies if it is lower
+	 * @param maxSize the limit of the protocol or the address
+	 * @return the lower of the limits
+	 */
+	static int limit(OperationOptions options, int maxSize) {
+		int operationLimit = options.getMaxFrameSize();
+		return operationLimit > 0 && operationLimit < maxSize ? operationLimit : maxSize;
+	}
+}
@@ -1,16 +1,31 @@
 package implementation;
 
 import com.squareup.javapoet.*;
-import interfaces.Requestor;
+import interfaces.ClientRequestHandler;
+import interfaces.Invoker;
 import model.AbsoluteObjectReference;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
+import model.ExecutionStrategy;
+import model.InterfaceDescription;
+import model.OperationDescription;
+import model.OperationOptions;
+import model.ParameterDescription;
+import model.PriorityClass;
 
 import javax.lang.model.element.Modifier;
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class generate interfaces, client proxies and invokers.
@@ -20,134 +35,373 @@ import java.util.ArrayList;
 
 public class Generator {
 
-    public void generateInterface(JSONObject file, Path path) throws IOException {
-        String interfaceName = (String )file.get("name");
-        String interfaceDescription = (String )file.get("description");
-
-        JSONArray operations = (JSONArray) file.get("operations");
-        Iterable<MethodSpec> methods = new ArrayList<MethodSpec>();
-        for(int i = 0; i < operations.size(); ++i){
-            JSONObject method = (JSONObject) operations.get(i);
-            String methodName = (String) method.get("name");
-            String methodDescription = (String) method.get("description");
-            String methodReturn = (String) method.get("return");
+    /**
+     * Generates the interface, the client proxy and the invoker
+     *
+     * @param idl the interface description
+     * @param path the source root to write to
+     * @throws IOException if the files can't be written
+     */
+    public void generate(InterfaceDescription idl, Path path) throws IOException {
+        for(JavaFile file : files(idl)){
+            write(file, path);
+        }
+    }
 
-            JSONArray params = (JSONArray) method.get("params");
-            Iterable<ParameterSpec> parameters = new ArrayList<ParameterSpec>();
-            for (int j = 0; j < params.size(); j++) {
-                JSONObject param = (JSONObject) params.get(j);
-                String paramName = (String) param.get("name");
-                String paramType = (String) param.get("type");
-                String paramDescription = (String) param.get("description");
+    /**
+     * Builds the sources of the interface, the client proxy and the invoker,
+     * in that order, without writing them
+     *
+     * @param idl the interface description
+     * @return the sources
+     */
+    public List<JavaFile> files(InterfaceDescription idl) {
+        return Arrays.asList(interfaceFile(idl), classFile(idl), invokerFile(idl));
+    }
 
-                methodDescription += "\n@param " + paramName + " " + paramDescription;
+    public void generateInterface(InterfaceDescription idl, Path path) throws IOException {
+        write(interfaceFile(idl), path);
+    }
 
-                ParameterSpec ps = ParameterSpec.builder(getType(paramType), paramName).build();
-                ((ArrayList<ParameterSpec>) parameters).add(ps);
+    public JavaFile interfaceFile(InterfaceDescription idl) {
+        List<MethodSpec> methods = new ArrayList<MethodSpec>(idl.getOperations().size());
+        for(OperationDescription operation : idl.getOperations()){
+            List<ParameterSpec> parameters = new ArrayList<ParameterSpec>(operation.getParameters().size());
+            for(ParameterDescription param : operation.getParameters()){
+                parameters.add(ParameterSpec.builder(getType(param.getType()), param.getName()).build());
             }
 
-            methodDescription += "\n@return " + methodReturn;
-
-            MethodSpec ms = MethodSpec.methodBuilder(methodName)
+            MethodSpec ms = MethodSpec.methodBuilder(operation.getName())
                     .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
-                    .returns(getType(methodReturn))
+                    .returns(getType(operation.getReturnType()))
                     .addParameters(parameters)
-                    .addJavadoc(methodDescription)
+                    .addJavadoc(getJavadoc(operation))
                     .addException(ClassName.get("", "exception.RemoteError")) // change the real package name of class exception.RemoteError
                     .addException(IOException.class)
                     .addException(ClassNotFoundException.class)
                     .build();
-            ((ArrayList<MethodSpec>) methods).add(ms);
+            methods.add(ms);
+
+            // Bulk version, looping over the scalar one unless overridden
+            if(operation.isVectorizable()){
+                String returnType = operation.getReturnType();
+                methods.add(bulkMethod(operation)
+                        .addModifiers(Modifier.DEFAULT)
+                        .addJavadoc("Applies {@link #$L} to the elements at each position of the arrays\n", operation.getName())
+                        .addStatement("$T _result = new $T[$T.length($L)]", getArrayType(returnType),
+                                getElementType(returnType), Bulk.class, lengths(operation, ""))
+                        .beginControlFlow("for (int _k = 0; _k < _result.length; _k++)")
+                        .addStatement("_result[_k] = $L", bulkElement(operation, CodeBlock.of("$L($L)",
+                                operation.getName(), elements(operation, ""))))
+                        .endControlFlow()
+                        .addStatement("return _result")
+                        .build());
+            }
         }
 
-        TypeSpec interfaceType = TypeSpec.interfaceBuilder(interfaceName)
+        TypeSpec interfaceType = TypeSpec.interfaceBuilder(idl.getName())
                 .addModifiers(Modifier.PUBLIC)
                 .addMethods(methods)
-                .addJavadoc(interfaceDescription)
-                .build();
-
-        JavaFile javaFile = JavaFile.builder("generated", interfaceType)
+                .addJavadoc(nullToEmpty(idl.getDescription()))
                 .build();
 
-        javaFile.writeTo(path);
+        return JavaFile.builder("generated", interfaceType).build();
     }
 
-    public void generateClass(JSONObject file, Path path) throws IOException {
-        String className = (String )file.get("name");
-        String classDescription = (String )file.get("description");
-
-        JSONArray operations = (JSONArray) file.get("operations");
-        Iterable<MethodSpec> methods = new ArrayList<>();
-        for(int i = 0; i < operations.size(); ++i){
-            JSONObject method = (JSONObject) operations.get(i);
-            String methodName = (String) method.get("name");
-            String methodDescription = (String) method.get("description");
-            String methodReturn = (String) method.get("return");
-
-            JSONArray params = (JSONArray) method.get("params");
-            Iterable<ParameterSpec> parameters = new ArrayList<ParameterSpec>();
-            String stringParams = "";
-            for (int j = 0; j < params.size(); j++) {
-                JSONObject param = (JSONObject) params.get(j);
-                String paramName = (String) param.get("name");
-                String paramType = (String) param.get("type");
-                String paramDescription = (String) param.get("description");
+    public void generateClass(InterfaceDescription idl, Path path) throws IOException {
+        write(classFile(idl), path);
+    }
 
-                methodDescription += "\n@param " + paramName + " " + paramDescription;
+    public JavaFile classFile(InterfaceDescription idl) {
+        String className = idl.getName();
 
-                ParameterSpec ps = ParameterSpec.builder(getType(paramType), paramName).build();
-                ((ArrayList<ParameterSpec>) parameters).add(ps);
+        List<MethodSpec> methods = new ArrayList<MethodSpec>(idl.getOperations().size());
+        CodeBlock.Builder operationOptions = CodeBlock.builder();
+        for(OperationDescription operation : idl.getOperations()){
+            String methodName = operation.getName();
 
-                stringParams += paramName;
-                if(j + 1 < params.size())
-                    stringParams += ",";
+            List<ParameterSpec> parameters = new ArrayList<ParameterSpec>(operation.getParameters().size());
+            StringBuilder stringParams = new StringBuilder();
+            for(ParameterDescription param : operation.getParameters()){
+                parameters.add(ParameterSpec.builder(getType(param.getType()), param.getName()).build());
+                stringParams.append(',').append(param.getName());
             }
 
-            methodDescription += "\n@return " + methodReturn;
+            if(operation.isIdempotent() || operation.getPriority() != PriorityClass.NORMAL || operation.getMaxFrameSize() > 0
+                    || operation.getCodec() != null){
+                operationOptions.addStatement("OPERATIONS.put($S, $L)", methodName, optionsOf(operation.getOptions()));
+            }
+            if(operation.isVectorizable()){
+                operationOptions.addStatement("OPERATIONS.put($S, $L)", operation.getBulkName(), optionsOf(operation.getBulkOptions()));
+            }
 
             MethodSpec ms = MethodSpec.methodBuilder(methodName)
                     .addModifiers(Modifier.PUBLIC)
-                    .returns(getType(methodReturn))
+                    .returns(getType(operation.getReturnType()))
                     .addParameters(parameters)
-                    .addStatement("return " + getCastType(methodReturn) + " r.request(aor,\"" + methodName + "\"," + stringParams + ")")
-                    .addJavadoc(methodDescription)
+                    .addStatement("return r.request(aor,\"" + methodName + "\",$T.class" + stringParams + ")", getType(operation.getReturnType()))
+                    .addJavadoc(getJavadoc(operation))
                     .addException(ClassName.get("", "exception.RemoteError"))
                     .addException(IOException.class)
                     .addException(ClassNotFoundException.class)
                     .build();
-            ((ArrayList<MethodSpec>) methods).add(ms);
+            methods.add(ms);
+
+            // Bulk version sending all the arrays in a single request
+            if(operation.isVectorizable()){
+                List<CodeBlock> arrays = new ArrayList<CodeBlock>();
+                for(ParameterDescription param : operation.getParameters()){
+                    arrays.add(CodeBlock.of("$L", param.getName()));
+                }
+                methods.add(bulkMethod(operation)
+                        .addAnnotation(Override.class)
+                        .addStatement("return r.request(aor,$S,$T.class,new Object[] {$L})", operation.getBulkName(),
+                                getArrayType(operation.getReturnType()), CodeBlock.join(arrays, ", "))
+                        .build());
+            }
         }
 
         // Creating fields of aor and requestor
         FieldSpec aor = FieldSpec.builder(AbsoluteObjectReference.class, "aor")
                 .addModifiers(Modifier.PRIVATE)
                 .build();
-        FieldSpec r = FieldSpec.builder(Requestor.class, "r")
+        FieldSpec r = FieldSpec.builder(UnsyncRequestor.class, "r")
                 .addModifiers(Modifier.PRIVATE)
                 .build();
 
         // Defining constructor of class
+        boolean hasOptions = !operationOptions.build().isEmpty();
         MethodSpec constructor = MethodSpec.constructorBuilder()
                 .addModifiers(Modifier.PUBLIC)
                 .addParameter(AbsoluteObjectReference.class, "aor")
+                .addStatement("this(aor, $T.getInstance())", ClientRequestHandlerImpl.class)
+                .build();
+        MethodSpec handlerConstructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(AbsoluteObjectReference.class, "aor")
+                .addParameter(ClientRequestHandler.class, "handler")
+                .addStatement("this(aor, handler, null)")
+                .build();
+        MethodSpec priorityConstructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(AbsoluteObjectReference.class, "aor")
+                .addParameter(ClientRequestHandler.class, "handler")
+                .addParameter(PriorityClass.class, "priority")
+                .addJavadoc("@param priority the class of all the calls of this proxy, null for the ones declared\n")
                 .addStatement("this.aor = aor")
-                .addStatement("this.r = new $T()", UnsyncRequestor.class)
+                .addStatement(hasOptions ? "$T requestor = new $T(handler, OPERATIONS)" : "$T requestor = new $T(handler)",
+                        UnsyncRequestor.class, UnsyncRequestor.class)
+                .addStatement("requestor.setPriority(priority)")
+                .addStatement("this.r = requestor")
                 .build();
-
-        TypeSpec classType = TypeSpec.classBuilder("Client" + className)
+        MethodSpec setCodec = MethodSpec.methodBuilder("setCodec")
                 .addModifiers(Modifier.PUBLIC)
+                .addParameter(String.class, "operationName")
+                .addParameter(String.class, "codec")
+                .addJavadoc("Marshals the calls of an operation with another codec from now on\n"
+                        + "@param operationName the name of the operation\n"
+                        + "@param codec the name of a registered codec, null for the one declared\n")
+                .addStatement("r.setCodec(operationName, codec)")
+                .build();
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder("Client" + className)
+                .addModifiers(Modifier.PUBLIC);
+
+        // Options of the operations declaring any, shared by all instances
+        if(hasOptions){
+            FieldSpec options = FieldSpec.builder(
+                    ParameterizedTypeName.get(Map.class, String.class, OperationOptions.class), "OPERATIONS")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("new $T<>()", HashMap.class)
+                    .build();
+            classBuilder.addField(options)
+                    .addStaticBlock(operationOptions.build());
+        }
+
+        TypeSpec classType = classBuilder
                 .addField(aor)
                 .addField(r)
                 .addMethod(constructor)
+                .addMethod(handlerConstructor)
+                .addMethod(priorityConstructor)
+                .addMethod(setCodec)
                 .addMethods(methods)
-                .addJavadoc(classDescription)
+                .addJavadoc(nullToEmpty(idl.getDescription()))
                 .addSuperinterface(ClassName.get("", className))
                 .build();
 
-        JavaFile javaFile = JavaFile.builder("generated", classType)
+        return JavaFile.builder("generated", classType).build();
+    }
+
+    public void generateInvoker(InterfaceDescription idl, Path path) throws IOException {
+        write(invokerFile(idl), path);
+    }
+
+    public JavaFile invokerFile(InterfaceDescription idl) {
+        String interfaceName = idl.getName();
+        String classDescription = "Invoker of remote {@code " + interfaceName + "} objects";
+
+        CodeBlock.Builder dispatch = CodeBlock.builder()
+                .beginControlFlow("switch (invocation.getInvocationData().getOperationName())");
+        List<CodeBlock> coalesced = new ArrayList<CodeBlock>();
+        Map<ExecutionStrategy, CodeBlock.Builder> executions = new EnumMap<ExecutionStrategy, CodeBlock.Builder>(ExecutionStrategy.class);
+        for(OperationDescription operation : idl.getOperations()){
+            List<ParameterDescription> params = operation.getParameters();
+            CodeBlock.Builder arguments = CodeBlock.builder();
+            for (int j = 0; j < params.size(); j++) {
+                if(j > 0)
+                    arguments.add(", ");
+                String type = params.get(j).getType();
+                arguments.add("$T.argument(params, $L, $T.class, $L)", Invoker.class, j, getType(type), absentValue(type));
+            }
+
+            dispatch.add("case $S:\n", operation.getName())
+                    .indent()
+                    .addStatement("return object.$L($L)", operation.getName(), arguments.build())
+                    .unindent();
+
+            if(operation.isCoalesced()){
+                coalesced.add(CodeBlock.of("$S", operation.getName()));
+            }
+
+            // The bulk version runs where the scalar one does
+            if(operation.getExecution() != ExecutionStrategy.INLINE){
+                CodeBlock.Builder labels = executions.computeIfAbsent(operation.getExecution(), k -> CodeBlock.builder());
+                labels.add("case $S:\n", operation.getName());
+                if(operation.isVectorizable()){
+                    labels.add("case $S:\n", operation.getBulkName());
+                }
+            }
+
+            // Bulk version, applying the scalar one in parallel
+            if(operation.isVectorizable()){
+                String returnType = operation.getReturnType();
+                dispatch.add("case $S: {\n", operation.getBulkName())
+                        .indent();
+                for (int j = 0; j < params.size(); j++) {
+                    TypeName arrayType = getArrayType(params.get(j).getType());
+                    dispatch.addStatement("$T _$L = $T.argument(params, $L, $T.class, new $T[0])", arrayType,
+                            params.get(j).getName(), Invoker.class, j, arrayType, getElementType(params.get(j).getType()));
+                }
+                dispatch.addStatement("$T _result = new $T[$T.length($L)]", getArrayType(returnType),
+                                getElementType(returnType), Bulk.class, lengths(operation, "_"))
+                        .addStatement("$T.forEach(_result.length, _k -> _result[_k] = $L)", Bulk.class,
+                                bulkElement(operation, CodeBlock.of("object.$L($L)", operation.getName(),
+                                        elements(operation, "_"))))
+                        .addStatement("return _result")
+                        .unindent()
+                        .add("}\n");
+            }
+        }
+        dispatch.add("default:\n")
+                .indent()
+                .addStatement("throw new $T($S + invocation.getInvocationData().getOperationName())",
+                        ClassName.get("", "exception.RemoteError"), "Unknown operation ")
+                .unindent()
+                .endControlFlow();
+
+        ClassName remoteInterface = ClassName.get("generated", interfaceName);
+        FieldSpec object = FieldSpec.builder(remoteInterface, "object")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .build();
+
+        MethodSpec constructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(remoteInterface, "object")
+                .addStatement("this.object = object")
+                .build();
+
+        MethodSpec invoke = MethodSpec.methodBuilder("invoke")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(Object.class)
+                .addParameter(Invocation.class, "invocation")
+                .addStatement("$T[] params = invocation.getInvocationData().getActualParams()", Object.class)
+                .addCode(dispatch.build())
+                .addException(ClassName.get("", "exception.RemoteError"))
+                .addException(IOException.class)
+                .addException(ClassNotFoundException.class)
+                .build();
+
+        TypeSpec.Builder classBuilder = TypeSpec.classBuilder(interfaceName + "Invoker")
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc(classDescription)
+                .addSuperinterface(Invoker.class);
+
+        // Operations whose concurrent identical invocations run once
+        if(!coalesced.isEmpty()){
+            classBuilder.addField(FieldSpec.builder(
+                    ParameterizedTypeName.get(Set.class, String.class), "COALESCED")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("new $T<>($T.asList($L))", HashSet.class, Arrays.class, CodeBlock.join(coalesced, ", "))
+                    .build());
+            classBuilder.addMethod(MethodSpec.methodBuilder("isCoalesced")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(boolean.class)
+                    .addParameter(String.class, "operationName")
+                    .addStatement("return COALESCED.contains(operationName)")
+                    .build());
+        }
+
+        // Operations which don't run on the connection thread
+        if(!executions.isEmpty()){
+            CodeBlock.Builder strategies = CodeBlock.builder()
+                    .beginControlFlow("switch (operationName)");
+            for(Map.Entry<ExecutionStrategy, CodeBlock.Builder> entry : executions.entrySet()){
+                strategies.add(entry.getValue().build())
+                        .indent()
+                        .addStatement("return $T.$L", ExecutionStrategy.class, entry.getKey().name())
+                        .unindent();
+            }
+            strategies.add("default:\n")
+                    .indent()
+                    .addStatement("return $T.$L", ExecutionStrategy.class, ExecutionStrategy.INLINE.name())
+                    .unindent()
+                    .endControlFlow();
+            classBuilder.addMethod(MethodSpec.methodBuilder("getExecution")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(ExecutionStrategy.class)
+                    .addParameter(String.class, "operationName")
+                    .addCode(strategies.build())
+                    .build());
+        }
+
+        TypeSpec classType = classBuilder
+                .addField(object)
+                .addMethod(constructor)
+                .addMethod(invoke)
                 .build();
 
-        javaFile.writeTo(path);
+        return JavaFile.builder("generated", classType).build();
+    }
+
+    /**
+     * Writes the file under the source root through a buffered writer
+     */
+    private void write(JavaFile javaFile, Path path) throws IOException {
+        Path directory = path;
+        for(String packageName : javaFile.packageName.split("\\.")){
+            directory = directory.resolve(packageName);
+        }
+        Files.createDirectories(directory);
+        Path file = directory.resolve(javaFile.typeSpec.name + ".java");
+        try(Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            javaFile.writeTo(writer);
+        }
+    }
+
+    private String getJavadoc(OperationDescription operation){
+        StringBuilder javadoc = new StringBuilder(nullToEmpty(operation.getDescription()));
+        for(ParameterDescription param : operation.getParameters()){
+            javadoc.append("\n@param ").append(param.getName()).append(' ').append(nullToEmpty(param.getDescription()));
+        }
+        return javadoc.append("\n@return ").append(operation.getReturnType()).toString();
+    }
+
+    private String nullToEmpty(String text){
+        return text == null ? "" : text;
     }
 
     private Type getType(String type){
@@ -166,20 +420,113 @@ public class Generator {
         return String.class;
     }
 
-    private String getCastType(String type){
+    /**
+     * Starts the bulk version of a vectorizable operation, taking and returning arrays
+     */
+    private MethodSpec.Builder bulkMethod(OperationDescription operation){
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(operation.getBulkName())
+                .addModifiers(Modifier.PUBLIC)
+                .returns(getArrayType(operation.getReturnType()));
+        for(ParameterDescription param : operation.getParameters()){
+            builder.addParameter(getArrayType(param.getType()), param.getName());
+        }
+        return builder
+                .addException(ClassName.get("", "exception.RemoteError"))
+                .addException(IOException.class)
+                .addException(ClassNotFoundException.class);
+    }
+
+    /**
+     * Expression building the options, e.g. "OperationOptions.DEFAULT.idempotent().withPriority(PriorityClass.BATCH)"
+     */
+    private CodeBlock optionsOf(OperationOptions options){
+        CodeBlock.Builder code = CodeBlock.builder().add("$T.DEFAULT", OperationOptions.class);
+        if(options.isHedged()){
+            code.add(".hedged()");
+        }else if(options.isIdempotent()){
+            code.add(".idempotent()");
+        }
+        if(options.getPriority() != PriorityClass.NORMAL){
+            code.add(".withPriority($T.$L)", PriorityClass.class, options.getPriority().name());
+        }
+        if(options.getMaxFrameSize() > 0){
+            code.add(".withMaxFrameSize($L)", options.getMaxFrameSize());
+        }
+        if(options.getCodec() != null){
+            code.add(".withCodec($S)", options.getCodec());
+        }
+        return code.build();
+    }
+
+    /**
+     * Lengths of the argument arrays of a bulk operation, e.g. "start.length, i.length"
+     */
+    private CodeBlock lengths(OperationDescription operation, String prefix){
+        List<CodeBlock> lengths = new ArrayList<CodeBlock>();
+        for(ParameterDescription param : operation.getParameters()){
+            lengths.add(CodeBlock.of("$L$L.length", prefix, param.getName()));
+        }
+        return CodeBlock.join(lengths, ", ");
+    }
+
+    /**
+     * Elements at position _k of the argument arrays of a bulk operation, e.g. "start[_k], i[_k]"
+     */
+    private CodeBlock elements(OperationDescription operation, String prefix){
+        List<CodeBlock> elements = new ArrayList<CodeBlock>();
+        for(ParameterDescription param : operation.getParameters()){
+            elements.add(CodeBlock.of("$L$L[_k]", prefix, param.getName()));
+        }
+        return CodeBlock.join(elements, ", ");
+    }
+
+    /**
+     * Result of the scalar operation at position _k of a bulk operation, checked
+     * not to be null before it is unboxed into an array of primitives
+     */
+    private CodeBlock bulkElement(OperationDescription operation, CodeBlock call){
+        if(!getElementType(operation.getReturnType()).isPrimitive()){
+            return call;
+        }
+        return CodeBlock.of("$T.result($L, $S, _k)", Bulk.class, call, operation.getName());
+    }
+
+    /**
+     * Type of the array elements of bulk operations, primitive where possible
+     */
+    private TypeName getElementType(String type){
         if(type.equals("int")){
-            return "(Integer)";
+            return TypeName.INT;
         }else if(type.equals("float")){
-            return "(Float)";
+            return TypeName.FLOAT;
         }else if(type.equals("boolean")){
-            return "(Boolean)";
-        }else if(type.equals("string")){
-            return "(String)";
+            return TypeName.BOOLEAN;
+        }else if(type.equals("char")){
+            return TypeName.CHAR;
+        }
+
+        return ClassName.get(String.class);
+    }
+
+    private TypeName getArrayType(String type){
+        return ArrayTypeName.of(getElementType(type));
+    }
+
+    /**
+     * Value of the arguments of the given type missing from an invocation
+     */
+    private String absentValue(String type){
+        if(type.equals("int")){
+            return "0";
+        }else if(type.equals("float")){
+            return "0f";
+        }else if(type.equals("boolean")){
+            return "false";
         }else if(type.equals("char")){
-            return "(Character)";
+            return "'\\0'";
         }
 
-        return "(String)";
+        return "\"\"";
     }
 
 }
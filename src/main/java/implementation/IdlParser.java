@@ -0,0 +1,485 @@
+package implementation;
+
+import exception.InvalidIdlException;
+import model.ExecutionStrategy;
+import model.InterfaceDescription;
+import model.OperationDescription;
+import model.ParameterDescription;
+import model.PriorityClass;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import javax.lang.model.SourceVersion;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads interface descriptions into the typed model, streaming the
+ * JSON instead of building a document first, and checks them against
+ * the schema:
+ * <pre>
+ * { "name": id, "description": text, "codec": codec, "operations": [
+ *     { "name": id, "description": text, "return": type,
+ *       "idempotent": bool, "hedged": bool, "coalesce": bool, "vectorizable": bool,
+ *       "priority": "interactive" | "normal" | "batch",
+ *       "execution": "inline" | "pooled" | "virtual", "maxFrameSize": bytes,
+ *       "codec": codec,
+ *       "params": [ { "name": id, "type": type, "description": text } ] } ] }
+ * </pre>
+ * Codecs are names registered in the {@link MarshallerRegistry}, e.g.
+ * "compact"; the codec of the interface applies to the operations which
+ * don't name one. Names (id) must be Java identifiers other than the Java
+ * keywords. Unknown entries are skipped. Errors report the line and column
+ * where they were found.
+ */
+public class IdlParser {
+
+	/**
+	 * Types accepted for parameters and returns
+	 */
+	private static final Set<String> TYPES = new HashSet<String>(Arrays.asList(
+			"int", "float", "boolean", "string", "char"));
+
+	/**
+	 * Parses an interface description file
+	 *
+	 * @param file the file
+	 * @return the interface description
+	 * @throws IOException if the file can't be read
+	 * @throws InvalidIdlException if the description is invalid
+	 */
+	public InterfaceDescription parse(Path file) throws IOException, InvalidIdlException {
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return parse(reader);
+		}
+	}
+
+	/**
+	 * Parses an interface description
+	 *
+	 * @param reader the description source, not closed
+	 * @return the interface description
+	 * @throws IOException if the source can't be read
+	 * @throws InvalidIdlException if the description is invalid
+	 */
+	public InterfaceDescription parse(Reader reader) throws IOException, InvalidIdlException {
+		LineTrackingReader lines = new LineTrackingReader(reader);
+		JSONParser parser = new JSONParser();
+		Handler handler = new Handler(parser);
+		try {
+			parser.parse(lines, handler);
+		} catch (ParseException e) {
+			if(e.getUnexpectedObject() instanceof SchemaError) {
+				throw lines.error(((SchemaError) e.getUnexpectedObject()).message, e.getPosition());
+			}
+			throw lines.error(syntaxError(e), e.getPosition());
+		}
+		if(handler.result == null) {
+			throw lines.error("empty interface description", 0);
+		}
+		return handler.result;
+	}
+
+	private static String syntaxError(ParseException e) {
+		switch(e.getErrorType()) {
+			case ParseException.ERROR_UNEXPECTED_CHAR:
+				return "unexpected character " + e.getUnexpectedObject();
+			case ParseException.ERROR_UNEXPECTED_TOKEN:
+				return "unexpected token " + e.getUnexpectedObject();
+			default:
+				return "malformed JSON";
+		}
+	}
+
+	/**
+	 * Kinds of JSON containers the handler can be in
+	 */
+	private enum Frame { ROOT, OPERATIONS, OPERATION, PARAMS, PARAM }
+
+	/**
+	 * Carries a schema violation through the JSON parser
+	 */
+	private static final class SchemaError {
+		private final String message;
+
+		SchemaError(String message) {
+			this.message = message;
+		}
+	}
+
+	/**
+	 * Builds the model from the parser events
+	 */
+	private static final class Handler implements ContentHandler {
+
+		private final JSONParser parser;
+
+		private final Deque<Frame> frames = new ArrayDeque<Frame>();
+
+		private final Set<String> operationNames = new HashSet<String>();
+
+		/**
+		 * Nesting depth inside a skipped unknown entry, 0 when not skipping
+		 */
+		private int skipped;
+
+		private String key;
+
+		private InterfaceDescription idl;
+
+		private OperationDescription operation;
+
+		private ParameterDescription parameter;
+
+		private InterfaceDescription result;
+
+		Handler(JSONParser parser) {
+			this.parser = parser;
+		}
+
+		@Override
+		public void startJSON() {
+		}
+
+		@Override
+		public void endJSON() {
+		}
+
+		@Override
+		public boolean startObject() throws ParseException {
+			if(skipped > 0) {
+				++skipped;
+				return true;
+			}
+			Frame top = frames.peek();
+			if(top == null) {
+				if(result != null) {
+					throw error("only one interface can be described");
+				}
+				idl = new InterfaceDescription();
+				frames.push(Frame.ROOT);
+			} else if(top == Frame.OPERATIONS) {
+				operation = new OperationDescription();
+				frames.push(Frame.OPERATION);
+			} else if(top == Frame.PARAMS) {
+				parameter = new ParameterDescription();
+				frames.push(Frame.PARAM);
+			} else {
+				skipContainer(top);
+			}
+			return true;
+		}
+
+		@Override
+		public boolean endObject() throws ParseException {
+			if(skipped > 0) {
+				--skipped;
+				return true;
+			}
+			switch(frames.pop()) {
+				case ROOT:
+					require(idl.getName(), "interface", "name");
+					if(idl.getOperations().isEmpty()) {
+						throw error("interface " + idl.getName() + " must declare operations");
+					}
+					for(OperationDescription declared : idl.getOperations()) {
+						if(declared.isVectorizable() && operationNames.contains(declared.getBulkName())) {
+							throw error("operation " + declared.getBulkName() + " clashes with the bulk version of "
+									+ declared.getName());
+						}
+					}
+					for(OperationDescription declared : idl.getOperations()) {
+						if(declared.getCodec() == null) {
+							declared.setCodec(idl.getCodec());
+						}
+					}
+					result = idl;
+					break;
+				case OPERATION:
+					require(operation.getName(), "operation", "name");
+					require(operation.getReturnType(), "operation " + operation.getName(), "return");
+					if(operation.isVectorizable() && operation.getParameters().isEmpty()) {
+						throw error("vectorizable operation " + operation.getName() + " must declare parameters");
+					}
+					if(!operationNames.add(operation.getName())) {
+						throw error("operation " + operation.getName() + " is declared twice");
+					}
+					idl.getOperations().add(operation);
+					break;
+				case PARAM:
+					require(parameter.getName(), "parameter", "name");
+					require(parameter.getType(), "parameter " + parameter.getName(), "type");
+					operation.getParameters().add(parameter);
+					break;
+				default:
+					break;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean startObjectEntry(String key) {
+			if(skipped == 0) {
+				this.key = key;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean endObjectEntry() {
+			return true;
+		}
+
+		@Override
+		public boolean startArray() throws ParseException {
+			if(skipped > 0) {
+				++skipped;
+				return true;
+			}
+			Frame top = frames.peek();
+			if(top == Frame.ROOT && "operations".equals(key)) {
+				frames.push(Frame.OPERATIONS);
+			} else if(top == Frame.OPERATION && "params".equals(key)) {
+				frames.push(Frame.PARAMS);
+			} else {
+				skipContainer(top);
+			}
+			return true;
+		}
+
+		@Override
+		public boolean endArray() {
+			if(skipped > 0) {
+				--skipped;
+			} else {
+				frames.pop();
+			}
+			return true;
+		}
+
+		@Override
+		public boolean primitive(Object value) throws ParseException {
+			if(skipped > 0) {
+				return true;
+			}
+			Frame top = frames.peek();
+			if(top == null) {
+				throw error("expected an interface object");
+			}
+			switch(top) {
+				case ROOT:
+					if("name".equals(key)) {
+						idl.setName(identifier(value));
+					} else if("description".equals(key)) {
+						idl.setDescription(text(value));
+					} else if("codec".equals(key)) {
+						idl.setCodec(codec(value));
+					} else if("operations".equals(key)) {
+						throw error("\"operations\" must be an array");
+					}
+					break;
+				case OPERATION:
+					if("name".equals(key)) {
+						operation.setName(identifier(value));
+					} else if("description".equals(key)) {
+						operation.setDescription(text(value));
+					} else if("return".equals(key)) {
+						operation.setReturnType(type(value));
+					} else if("idempotent".equals(key)) {
+						operation.setIdempotent(flag(value));
+					} else if("hedged".equals(key)) {
+						operation.setHedged(flag(value));
+					} else if("coalesce".equals(key)) {
+						operation.setCoalesced(flag(value));
+					} else if("vectorizable".equals(key)) {
+						operation.setVectorizable(flag(value));
+					} else if("priority".equals(key)) {
+						operation.setPriority(priority(value));
+					} else if("execution".equals(key)) {
+						operation.setExecution(execution(value));
+					} else if("maxFrameSize".equals(key)) {
+						operation.setMaxFrameSize(size(value));
+					} else if("codec".equals(key)) {
+						operation.setCodec(codec(value));
+					} else if("params".equals(key)) {
+						throw error("\"params\" must be an array");
+					}
+					break;
+				case PARAM:
+					if("name".equals(key)) {
+						parameter.setName(identifier(value));
+					} else if("type".equals(key)) {
+						parameter.setType(type(value));
+					} else if("description".equals(key)) {
+						parameter.setDescription(text(value));
+					}
+					break;
+				default:
+					throw error("expected an object");
+			}
+			return true;
+		}
+
+		/**
+		 * Skips an object or array found as the value of an unknown entry
+		 */
+		private void skipContainer(Frame top) throws ParseException {
+			if(top == Frame.OPERATIONS || top == Frame.PARAMS) {
+				throw error("expected an object");
+			}
+			if(top == Frame.ROOT && ("name".equals(key) || "description".equals(key) || "codec".equals(key))
+					|| top == Frame.OPERATION && ("name".equals(key) || "description".equals(key) || "return".equals(key)
+							|| "priority".equals(key) || "execution".equals(key) || "codec".equals(key))
+					|| top == Frame.PARAM && ("name".equals(key) || "type".equals(key) || "description".equals(key))) {
+				throw error("\"" + key + "\" must be a string");
+			}
+			skipped = 1;
+		}
+
+		private void require(String value, String owner, String entry) throws ParseException {
+			if(value == null) {
+				throw error(owner + " must declare \"" + entry + "\"");
+			}
+		}
+
+		private String text(Object value) throws ParseException {
+			if(!(value instanceof String)) {
+				throw error("\"" + key + "\" must be a string");
+			}
+			return (String) value;
+		}
+
+		private String identifier(Object value) throws ParseException {
+			String name = text(value);
+			boolean valid = !name.isEmpty() && Character.isJavaIdentifierStart(name.charAt(0));
+			for(int i = 1; valid && i < name.length(); ++i) {
+				valid = Character.isJavaIdentifierPart(name.charAt(i));
+			}
+			if(!valid) {
+				throw error("\"" + name + "\" is not a valid name");
+			}
+			if(SourceVersion.isKeyword(name)) {
+				throw error("\"" + name + "\" is a Java keyword and can't be used as a name");
+			}
+			return name;
+		}
+
+		private String type(Object value) throws ParseException {
+			String type = text(value);
+			if(!TYPES.contains(type)) {
+				throw error("unknown type \"" + type + "\", expected one of " + TYPES);
+			}
+			return type;
+		}
+
+		private boolean flag(Object value) throws ParseException {
+			if(!(value instanceof Boolean)) {
+				throw error("\"" + key + "\" must be true or false");
+			}
+			return (Boolean) value;
+		}
+
+		private PriorityClass priority(Object value) throws ParseException {
+			PriorityClass priority = PriorityClass.fromName(text(value));
+			if(priority == null) {
+				throw error("unknown priority \"" + value + "\", expected one of "
+						+ Arrays.toString(PriorityClass.values()).toLowerCase());
+			}
+			return priority;
+		}
+
+		private int size(Object value) throws ParseException {
+			if(!(value instanceof Long) || (Long) value <= 0 || (Long) value > Integer.MAX_VALUE) {
+				throw error("\"" + key + "\" must be a positive number of bytes");
+			}
+			return ((Long) value).intValue();
+		}
+
+		private ExecutionStrategy execution(Object value) throws ParseException {
+			ExecutionStrategy execution = ExecutionStrategy.fromName(text(value));
+			if(execution == null) {
+				throw error("unknown execution \"" + value + "\", expected one of "
+						+ Arrays.toString(ExecutionStrategy.values()).toLowerCase());
+			}
+			return execution;
+		}
+
+		private String codec(Object value) throws ParseException {
+			String codec = text(value);
+			try {
+				MarshallerRegistry.tagOf(codec);
+			} catch (IllegalArgumentException e) {
+				throw error("unknown codec \"" + codec + "\", it must be registered in the MarshallerRegistry");
+			}
+			return codec;
+		}
+
+		private ParseException error(String message) {
+			return new ParseException(parser.getPosition(), ParseException.ERROR_UNEXPECTED_EXCEPTION,
+					new SchemaError(message));
+		}
+	}
+
+	/**
+	 * Remembers where lines start, to turn parser offsets into lines and columns
+	 */
+	private static final class LineTrackingReader extends FilterReader {
+
+		private int[] lineStarts = new int[64];
+
+		private int lines = 1;
+
+		private int offset;
+
+		LineTrackingReader(Reader in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int c = super.read();
+			if(c >= 0) {
+				track((char) c);
+			}
+			return c;
+		}
+
+		@Override
+		public int read(char[] buffer, int off, int len) throws IOException {
+			int n = super.read(buffer, off, len);
+			for(int i = 0; i < n; ++i) {
+				track(buffer[off + i]);
+			}
+			return n;
+		}
+
+		private void track(char c) {
+			++offset;
+			if(c == '\n') {
+				if(lines == lineStarts.length) {
+					lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+				}
+				lineStarts[lines++] = offset;
+			}
+		}
+
+		InvalidIdlException error(String message, int position) {
+			int line = Arrays.binarySearch(lineStarts, 0, lines, position);
+			if(line < 0) {
+				line = -line - 2;
+			}
+			return new InvalidIdlException(message, line + 1, position - lineStarts[line] + 1);
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package implementation;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -9,7 +10,14 @@ import java.util.Map;
  *
  * @author vitorgreati
  */
-public class Invocation {
+public class Invocation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Initial capacity of the contexts, holding the trace keys without resizing
+     */
+    static final int CONTEXT_CAPACITY = TraceContext.KEYS.length * 4 / 3 + 1;
 
     private InvocationData invocationData;
 
@@ -17,7 +25,7 @@ public class Invocation {
 
     public Invocation(InvocationData invocationData) {
         this.invocationData = invocationData;
-        this.context = new HashMap<String, Object>();
+        this.context = new HashMap<String, Object>(CONTEXT_CAPACITY);
     }
 
     public Invocation(InvocationData invocationData, Map<String, Object> context) {
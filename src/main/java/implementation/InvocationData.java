@@ -2,12 +2,16 @@ package implementation;
 
 import model.AbsoluteObjectReference;
 
+import java.io.Serializable;
+
 /**
  * Comprises all necessary data to perform an invocation.
  *
  * @author vitorgreati
  */
-public class InvocationData {
+public class InvocationData implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private AbsoluteObjectReference aor;
 
@@ -0,0 +1,188 @@
+package implementation;
+
+import model.AbsoluteObjectReference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A marshalled invocation whose object reference is marshalled apart,
+ * ahead of the rest of the invocation:
+ * <pre>
+ * INLINE reference-length:int reference invocation
+ * </pre>
+ * Protocols which only carry bytes send it as it is. Protocols keeping
+ * connections open send each reference once per connection, naming it
+ * with a small handle, and only the handle afterwards:
+ * <pre>
+ * DEFINE handle:int reference-length:int reference invocation
+ * USE handle:int invocation
+ * </pre>
+ * The {@link ServerRequestHandlerImpl} keeps the references defined on
+ * each connection. Frames starting with none of these markers are
+ * plain marshalled invocations, carrying their reference inside.
+ *
+ * The reference and the invocation are marshalled with the codec the
+ * message is tagged with, which protocols write in the frame header.
+ */
+public final class InvocationMessage extends ByteArrayOutputStream {
+
+	static final int DEFINE = -1;
+	static final int USE = -2;
+	static final int INLINE = -3;
+
+	/**
+	 * Most references given a handle on a connection; further ones are sent inline
+	 */
+	static final int MAX_HANDLES = 1024;
+
+	private final Reference reference;
+
+	/**
+	 * The {@link MarshallerRegistry} tag of the codec of the message
+	 */
+	private final int codec;
+
+	/**
+	 * Where the invocation starts, after the inline reference
+	 */
+	private final int payloadOffset;
+
+	/**
+	 * @param reference the reference of the invoked object, which the
+	 * invocation marshalled into this message must not repeat
+	 * @param codec the tag of the codec of the reference and the invocation
+	 */
+	InvocationMessage(Reference reference, int codec) {
+		super(64 + reference.bytes.length);
+		this.reference = reference;
+		this.codec = codec;
+		writeInt(INLINE);
+		writeInt(reference.bytes.length);
+		write(reference.bytes, 0, reference.bytes.length);
+		this.payloadOffset = count;
+	}
+
+	/**
+	 * Rebuilds a message from its bytes, e.g. as recorded, so it is sent
+	 * again in the same codec and with its reference named by handle
+	 * @param request the bytes of a message, or of a plain marshalled invocation
+	 * @param codec the tag of the codec it was marshalled with
+	 * @return the message, or a stream of the bytes if they aren't a message
+	 * @throws IllegalArgumentException if the bytes aren't a message but have a codec other than the default
+	 */
+	public static ByteArrayOutputStream of(byte[] request, int codec) {
+		int referenceLength = request.length < 8 || readInt(request, 0) != INLINE ? -1 : readInt(request, 4);
+		if(referenceLength < 0 || referenceLength > request.length - 8) {
+			if(codec != MarshallerRegistry.DEFAULT) {
+				throw new IllegalArgumentException("not an invocation message");
+			}
+			ByteArrayOutputStream plain = new ByteArrayOutputStream(request.length);
+			plain.write(request, 0, request.length);
+			return plain;
+		}
+		InvocationMessage message = new InvocationMessage(
+				new Reference(null, Arrays.copyOfRange(request, 8, 8 + referenceLength)), codec);
+		message.write(request, message.payloadOffset, request.length - message.payloadOffset);
+		return message;
+	}
+
+	/**
+	 * @return the marshalled reference of the invoked object
+	 */
+	public Reference getReference() {
+		return reference;
+	}
+
+	/**
+	 * @return the {@link MarshallerRegistry} tag of the codec of the message
+	 */
+	public int getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Writes the message as a length prefixed frame, naming the reference
+	 * by its handle on the connection when it was sent on it before
+	 *
+	 * @param out the output of the connection
+	 * @param handles the handles of the references sent on the connection,
+	 * updated when the reference gets one
+	 */
+	void writeFrame(DataOutputStream out, Map<Reference, Integer> handles) throws IOException {
+		int payloadLength = count - payloadOffset;
+		Integer handle = handles.get(reference);
+		if(handle != null) {
+			out.writeInt(8 + payloadLength);
+			out.writeInt(USE);
+			out.writeInt(handle);
+		} else if(handles.size() < MAX_HANDLES) {
+			handle = handles.size();
+			handles.put(reference, handle);
+			out.writeInt(12 + reference.bytes.length + payloadLength);
+			out.writeInt(DEFINE);
+			out.writeInt(handle);
+			out.writeInt(reference.bytes.length);
+			out.write(reference.bytes);
+		} else {
+			out.writeInt(count);
+			out.write(buf, 0, payloadOffset);
+		}
+		out.write(buf, payloadOffset, payloadLength);
+	}
+
+	private void writeInt(int value) {
+		write(value >>> 24);
+		write(value >>> 16);
+		write(value >>> 8);
+		write(value);
+	}
+
+	/**
+	 * Reads a big endian int, as written in the frames
+	 */
+	static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+				| (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+	}
+
+	/**
+	 * A marshalled object reference, compared by its bytes
+	 */
+	public static final class Reference {
+
+		private final AbsoluteObjectReference aor;
+		private final byte[] bytes;
+		private final int hash;
+
+		Reference(AbsoluteObjectReference aor, byte[] bytes) {
+			this.aor = aor;
+			this.bytes = bytes;
+			this.hash = Arrays.hashCode(bytes);
+		}
+
+		/**
+		 * @return the reference which was marshalled, null if it was only read back
+		 */
+		public AbsoluteObjectReference getAor() {
+			return aor;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Reference)) {
+				return false;
+			}
+			Reference other = (Reference) obj;
+			return hash == other.hash && Arrays.equals(bytes, other.bytes);
+		}
+	}
+}
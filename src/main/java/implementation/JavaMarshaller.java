@@ -1,5 +1,7 @@
 package implementation;
 
+import exception.RemoteError;
+import interfaces.Decoder;
 import interfaces.Marshaller;
 
 import java.io.ByteArrayInputStream;
@@ -7,6 +9,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -16,6 +21,11 @@ import java.io.ObjectOutputStream;
  * @author carlosemv
  */
 public class JavaMarshaller implements Marshaller {
+	/**
+	 * Decoders already created, shared by all instances
+	 */
+	private static final Map<Class<?>, Decoder<?>> decoders = new ConcurrentHashMap<Class<?>, Decoder<?>>();
+	
 	/**
 	 * Uses ObjectOutputStream to serialize an Object into a byte stream.
 	 * 
@@ -28,16 +38,45 @@ public class JavaMarshaller implements Marshaller {
 		
 		return byteStream;
 	}
+	
+	/**
+	 * Serializes an Object straight into a stream
+	 * 
+	 * @param object an Object that must implement the Java.io.Serializable interface
+	 * @param out the stream written to
+	 */
+	public void marshal(Object object, OutputStream out) throws IOException {
+		ObjectOutputStream objectStream = new ObjectOutputStream(out);
+		objectStream.writeObject(object);
+		objectStream.flush();
+	}
 
 	/**
 	 * Uses ObjectInputStream to deserialize a byte stream into an Object
 	 * 
 	 * @param byteStream a byte stream that represents a serialized instance of a known class
-	 * @param tgtClass is not used, result is cast to Object
+	 * @param tgtClass the class the result is checked against
 	 */
-	public <T> Object unmarshal(ByteArrayInputStream byteStream, Class<T> tgtClass) throws IOException, ClassNotFoundException {
+	public <T> T unmarshal(ByteArrayInputStream byteStream, Class<T> tgtClass) throws IOException, ClassNotFoundException {
 		ObjectInputStream objectStream = new ObjectInputStream(byteStream);
 		Object obj = objectStream.readObject();
-		return obj;
+		return tgtClass.cast(obj);
+	}
+	
+	/**
+	 * Gets a decoder which deserializes replies of the given class,
+	 * throwing the RemoteError sent instead when the call failed
+	 * 
+	 * @param tgtClass class of the replies
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Decoder<T> decoderFor(Class<T> tgtClass) {
+		return (Decoder<T>) decoders.computeIfAbsent(tgtClass, type -> byteStream -> {
+			Object obj = new ObjectInputStream(byteStream).readObject();
+			if(obj instanceof RemoteError) {
+				throw (RemoteError) obj;
+			}
+			return type.cast(obj);
+		});
 	}
 }
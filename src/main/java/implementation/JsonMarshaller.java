@@ -0,0 +1,416 @@
+package implementation;
+
+import exception.RemoteError;
+import interfaces.Decoder;
+import interfaces.Marshaller;
+import model.AbsoluteObjectReference;
+import model.ObjectId;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Marshaller writing JSON, slower and larger than the others but
+ * readable in a packet capture or a log, meant for debugging. Values
+ * keep their Java type by being wrapped in an object named after it.
+ *
+ * <pre>
+ * invocation = {"reference": reference, "operation": string,
+ *               "arguments": [value...], "context": {key: value...}}
+ * reference  = {"invoker": int, "object": uuid, "host": string, "port": int}
+ * reply      = {"return": value} | {"error": string}
+ * value      = null | string | boolean | {"int": n} | {"long": n}
+ *              | {"float": n} | {"double": n} | {"char": string}
+ *              | {"int[]": [...]} | {"float[]": [...]} | {"boolean[]": [...]}
+ *              | {"char[]": string} | {"string[]": [...]}
+ *              | {"serialized": base64 of the java serialized object}
+ * </pre>
+ *
+ * Floating point values which aren't finite are written as the strings
+ * "NaN", "Infinity" and "-Infinity".
+ */
+public class JsonMarshaller implements Marshaller {
+
+	private static final String REFERENCE = "reference";
+	private static final String INVOKER_ID = "invoker";
+	private static final String OBJECT_ID = "object";
+	private static final String HOST = "host";
+	private static final String PORT = "port";
+	private static final String OPERATION = "operation";
+	private static final String ARGUMENTS = "arguments";
+	private static final String CONTEXT = "context";
+
+	private static final String RETURN = "return";
+	private static final String ERROR = "error";
+
+	private static final String INT = "int";
+	private static final String FLOAT = "float";
+	private static final String CHAR = "char";
+	private static final String LONG = "long";
+	private static final String DOUBLE = "double";
+	private static final String INT_ARRAY = "int[]";
+	private static final String FLOAT_ARRAY = "float[]";
+	private static final String BOOLEAN_ARRAY = "boolean[]";
+	private static final String CHAR_ARRAY = "char[]";
+	private static final String STRING_ARRAY = "string[]";
+	private static final String SERIALIZED = "serialized";
+
+	/**
+	 * Decoders already created, shared by all instances
+	 */
+	private static final Map<Class<?>, Decoder<?>> decoders = new ConcurrentHashMap<Class<?>, Decoder<?>>();
+
+	/**
+	 * Writes invocations, argument arrays (as the arguments of an
+	 * invocation), object references, RemoteErrors as error replies
+	 * and any other object as a return value.
+	 */
+	@SuppressWarnings("unchecked")
+	public ByteArrayOutputStream marshal(Object object) throws IOException {
+		JSONObject json;
+		if(object instanceof Invocation) {
+			json = writeInvocation((Invocation) object);
+		} else if(object instanceof AbsoluteObjectReference) {
+			json = writeReference((AbsoluteObjectReference) object);
+		} else if(object != null && object.getClass() == Object[].class) {
+			json = new JSONObject();
+			json.put(ARGUMENTS, writeArguments((Object[]) object));
+		} else if(object instanceof RemoteError) {
+			json = new JSONObject();
+			json.put(ERROR, ((RemoteError) object).getMessage());
+		} else {
+			json = new JSONObject();
+			json.put(RETURN, writeValue(object));
+		}
+		byte[] bytes = json.toJSONString().getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+		out.write(bytes);
+		return out;
+	}
+
+	/**
+	 * Reads an invocation if tgtClass is Invocation, the arguments if it is
+	 * an array, a reference if it is AbsoluteObjectReference, and a reply
+	 * otherwise; error replies are returned as RemoteError
+	 */
+	public <T> T unmarshal(ByteArrayInputStream byteStream, Class<T> tgtClass) throws IOException, ClassNotFoundException {
+		JSONObject json = parse(byteStream);
+		if(tgtClass == Invocation.class) {
+			return tgtClass.cast(readInvocation(json));
+		}
+		if(tgtClass == Object[].class) {
+			return tgtClass.cast(readArguments(json));
+		}
+		if(tgtClass == AbsoluteObjectReference.class) {
+			return tgtClass.cast(readReference(json));
+		}
+		try {
+			return tgtClass.cast(readReply(json));
+		} catch (RemoteError e) {
+			return tgtClass.cast(e);
+		}
+	}
+
+	/**
+	 * Gets a decoder which reads replies of the given class,
+	 * throwing the RemoteError sent instead when the call failed
+	 *
+	 * @param tgtClass class of the replies
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Decoder<T> decoderFor(Class<T> tgtClass) {
+		return (Decoder<T>) decoders.computeIfAbsent(tgtClass,
+				type -> byteStream -> type.cast(readReply(parse(byteStream))));
+	}
+
+	private static JSONObject parse(ByteArrayInputStream byteStream) throws IOException {
+		Object json;
+		try {
+			json = new JSONParser().parse(new InputStreamReader(byteStream, StandardCharsets.UTF_8));
+		} catch (ParseException e) {
+			throw new IOException("malformed JSON message: " + e, e);
+		}
+		if(!(json instanceof JSONObject)) {
+			throw new IOException("expected a JSON object, got " + json);
+		}
+		return (JSONObject) json;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject writeInvocation(Invocation invocation) throws IOException {
+		InvocationData data = invocation.getInvocationData();
+		JSONObject json = new JSONObject();
+		if(data.getAor() != null) {
+			json.put(REFERENCE, writeReference(data.getAor()));
+		}
+		json.put(OPERATION, data.getOperationName());
+		if(data.getActualParams() != null) {
+			json.put(ARGUMENTS, writeArguments(data.getActualParams()));
+		}
+		Map<String, Object> context = invocation.getContext();
+		if(context != null && !context.isEmpty()) {
+			JSONObject entries = new JSONObject();
+			for(Map.Entry<String, Object> e : context.entrySet()) {
+				entries.put(e.getKey(), writeValue(e.getValue()));
+			}
+			json.put(CONTEXT, entries);
+		}
+		return json;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject writeReference(AbsoluteObjectReference aor) {
+		JSONObject json = new JSONObject();
+		json.put(INVOKER_ID, aor.getInvokerId());
+		if(aor.getObjectId() != null) {
+			json.put(OBJECT_ID, aor.getObjectId().toString());
+		}
+		if(aor.getHost() != null) {
+			json.put(HOST, aor.getHost());
+		}
+		json.put(PORT, aor.getPort());
+		return json;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONArray writeArguments(Object[] arguments) throws IOException {
+		JSONArray json = new JSONArray();
+		for(Object argument : arguments) {
+			json.add(writeValue(argument));
+		}
+		return json;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object writeValue(Object value) throws IOException {
+		if(value == null || value instanceof String || value instanceof Boolean) {
+			return value;
+		}
+		JSONObject json = new JSONObject();
+		if(value instanceof Integer) {
+			json.put(INT, value);
+		} else if(value instanceof Long) {
+			json.put(LONG, value);
+		} else if(value instanceof Float) {
+			json.put(FLOAT, writeNumber((Float) value));
+		} else if(value instanceof Double) {
+			json.put(DOUBLE, writeNumber((Double) value));
+		} else if(value instanceof Character) {
+			json.put(CHAR, value.toString());
+		} else if(value instanceof int[]) {
+			JSONArray array = new JSONArray();
+			for(int v : (int[]) value) {
+				array.add(v);
+			}
+			json.put(INT_ARRAY, array);
+		} else if(value instanceof float[]) {
+			JSONArray array = new JSONArray();
+			for(float v : (float[]) value) {
+				array.add(writeNumber(v));
+			}
+			json.put(FLOAT_ARRAY, array);
+		} else if(value instanceof boolean[]) {
+			JSONArray array = new JSONArray();
+			for(boolean v : (boolean[]) value) {
+				array.add(v);
+			}
+			json.put(BOOLEAN_ARRAY, array);
+		} else if(value instanceof char[]) {
+			json.put(CHAR_ARRAY, new String((char[]) value));
+		} else if(value instanceof String[]) {
+			JSONArray array = new JSONArray();
+			for(String v : (String[]) value) {
+				array.add(v);
+			}
+			json.put(STRING_ARRAY, array);
+		} else {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream objectStream = new ObjectOutputStream(bytes);
+			objectStream.writeObject(value);
+			objectStream.flush();
+			json.put(SERIALIZED, Base64.getEncoder().encodeToString(bytes.toByteArray()));
+		}
+		return json;
+	}
+
+	/**
+	 * @return the number, or its name if it isn't finite, which JSON can't represent
+	 */
+	private static Object writeNumber(double value) {
+		return Double.isNaN(value) || Double.isInfinite(value) ? Double.toString(value) : (Object) value;
+	}
+
+	private static Object writeNumber(float value) {
+		return Float.isNaN(value) || Float.isInfinite(value) ? Float.toString(value) : (Object) value;
+	}
+
+	private static Invocation readInvocation(JSONObject json) throws IOException, ClassNotFoundException {
+		Object reference = json.get(REFERENCE);
+		AbsoluteObjectReference aor = reference instanceof JSONObject ? readReference((JSONObject) reference) : null;
+		Object operation = json.get(OPERATION);
+		InvocationData data = new InvocationData(aor, operation == null ? null : operation.toString(), readArguments(json));
+		Map<String, Object> context = new HashMap<String, Object>(Invocation.CONTEXT_CAPACITY);
+		Object entries = json.get(CONTEXT);
+		if(entries instanceof JSONObject) {
+			for(Object e : ((JSONObject) entries).entrySet()) {
+				Map.Entry<?, ?> entry = (Map.Entry<?, ?>) e;
+				context.put(entry.getKey().toString(), readValue(entry.getValue()));
+			}
+		}
+		return new Invocation(data, context);
+	}
+
+	private static AbsoluteObjectReference readReference(JSONObject json) throws IOException {
+		Object objectId = json.get(OBJECT_ID);
+		ObjectId id = null;
+		if(objectId != null) {
+			try {
+				UUID uuid = UUID.fromString(objectId.toString());
+				id = new ObjectId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+			} catch (IllegalArgumentException e) {
+				throw new IOException("malformed object id " + objectId, e);
+			}
+		}
+		Object host = json.get(HOST);
+		return new AbsoluteObjectReference(id, host == null ? null : host.toString(),
+				(int) readLong(json.get(PORT)), (int) readLong(json.get(INVOKER_ID)));
+	}
+
+	private static Object[] readArguments(JSONObject json) throws IOException, ClassNotFoundException {
+		Object arguments = json.get(ARGUMENTS);
+		if(!(arguments instanceof JSONArray)) {
+			return new Object[0];
+		}
+		List<?> list = (JSONArray) arguments;
+		Object[] values = new Object[list.size()];
+		for(int i = 0; i < values.length; ++i) {
+			values[i] = readValue(list.get(i));
+		}
+		return values;
+	}
+
+	/**
+	 * @return the return value of the reply
+	 * @throws RemoteError if the reply is an error
+	 */
+	private static Object readReply(JSONObject json) throws RemoteError, IOException, ClassNotFoundException {
+		if(json.containsKey(ERROR)) {
+			Object message = json.get(ERROR);
+			throw message == null ? new RemoteError() : new RemoteError(message.toString());
+		}
+		return readValue(json.get(RETURN));
+	}
+
+	private static Object readValue(Object json) throws IOException, ClassNotFoundException {
+		if(!(json instanceof JSONObject)) {
+			return json;
+		}
+		JSONObject wrapper = (JSONObject) json;
+		if(wrapper.size() != 1) {
+			throw new IOException("expected a value wrapped in its type, got " + wrapper);
+		}
+		Map.Entry<?, ?> entry = (Map.Entry<?, ?>) wrapper.entrySet().iterator().next();
+		String type = entry.getKey().toString();
+		Object value = entry.getValue();
+		switch(type) {
+			case INT:
+				return (int) readLong(value);
+			case LONG:
+				return readLong(value);
+			case FLOAT:
+				return (float) readDouble(value);
+			case DOUBLE:
+				return readDouble(value);
+			case CHAR:
+				String c = readString(value);
+				if(c.length() != 1) {
+					throw new IOException("expected a single char, got " + c);
+				}
+				return c.charAt(0);
+			case CHAR_ARRAY:
+				return readString(value).toCharArray();
+			case SERIALIZED:
+				byte[] bytes;
+				try {
+					bytes = Base64.getDecoder().decode(readString(value));
+				} catch (IllegalArgumentException e) {
+					throw new IOException("malformed serialized value", e);
+				}
+				return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+			default:
+		}
+		if(!(value instanceof JSONArray)) {
+			throw new IOException("unknown value type " + type);
+		}
+		List<?> list = (JSONArray) value;
+		switch(type) {
+			case INT_ARRAY:
+				int[] ints = new int[list.size()];
+				for(int i = 0; i < ints.length; ++i) {
+					ints[i] = (int) readLong(list.get(i));
+				}
+				return ints;
+			case FLOAT_ARRAY:
+				float[] floats = new float[list.size()];
+				for(int i = 0; i < floats.length; ++i) {
+					floats[i] = (float) readDouble(list.get(i));
+				}
+				return floats;
+			case BOOLEAN_ARRAY:
+				boolean[] booleans = new boolean[list.size()];
+				for(int i = 0; i < booleans.length; ++i) {
+					booleans[i] = Boolean.TRUE.equals(list.get(i));
+				}
+				return booleans;
+			case STRING_ARRAY:
+				String[] strings = new String[list.size()];
+				for(int i = 0; i < strings.length; ++i) {
+					Object s = list.get(i);
+					strings[i] = s == null ? null : s.toString();
+				}
+				return strings;
+			default:
+				throw new IOException("unknown value type " + type);
+		}
+	}
+
+	private static long readLong(Object json) throws IOException {
+		if(!(json instanceof Number)) {
+			throw new IOException("expected a number, got " + json);
+		}
+		return ((Number) json).longValue();
+	}
+
+	private static double readDouble(Object json) throws IOException {
+		if(json instanceof Number) {
+			return ((Number) json).doubleValue();
+		}
+		try {
+			return Double.parseDouble(readString(json));
+		} catch (NumberFormatException e) {
+			throw new IOException("expected a number, got " + json, e);
+		}
+	}
+
+	private static String readString(Object json) throws IOException {
+		if(!(json instanceof String)) {
+			throw new IOException("expected a string, got " + json);
+		}
+		return (String) json;
+	}
+}
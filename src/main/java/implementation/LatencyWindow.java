@@ -0,0 +1,55 @@
+package implementation;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the latest latencies observed for an endpoint and
+ * periodically derives their 95th percentile.
+ */
+class LatencyWindow {
+	
+	/**
+	 * Number of latencies kept, must be a power of two
+	 */
+	private static final int SIZE = 128;
+	
+	/**
+	 * The percentile is recomputed after this many records, must be a power of two
+	 */
+	private static final int REFRESH = 32;
+	
+	private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+	private final AtomicLong count = new AtomicLong();
+	private volatile long p95 = -1L;
+	
+	/**
+	 * Records a latency
+	 * @param nanos the latency in nanoseconds
+	 */
+	void record(long nanos) {
+		long n = count.getAndIncrement();
+		samples.set((int) (n & (SIZE - 1)), nanos);
+		if((n & (REFRESH - 1)) == REFRESH - 1) {
+			p95 = percentile(Math.min(n + 1, SIZE), 0.95);
+		}
+	}
+	
+	/**
+	 * @return the 95th percentile in nanoseconds, or -1 while
+	 * fewer than {@value #REFRESH} latencies were recorded
+	 */
+	long p95() {
+		return p95;
+	}
+	
+	private long percentile(long available, double fraction) {
+		long[] sorted = new long[(int) available];
+		for(int i = 0; i < sorted.length; ++i) {
+			sorted[i] = samples.get(i);
+		}
+		Arrays.sort(sorted);
+		return sorted[(int) Math.ceil(fraction * sorted.length) - 1];
+	}
+}
@@ -0,0 +1,135 @@
+package implementation;
+
+import exception.RemoteError;
+import interfaces.ClientProtocolPlugin;
+import model.OperationOptions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Protocol which sends calls to servers on this host through a
+ * dedicated local protocol, e.g. {@link UnixDomainClientProtocol},
+ * and every other call through a remote protocol.
+ * 
+ * Whether a host is local is decided once per host name. Calls to
+ * local servers which the {@link UnixDomainClientProtocol} can't connect
+ * to, as they don't listen on a Unix domain socket or the runtime has
+ * none, go through the remote protocol too. This is checked once per
+ * port, and again after a local call to the port fails.
+ * 
+ * Routing is opt-in: the default handler sends every call through a
+ * {@link DefaultClientProtocol}, to this host too, until this protocol is
+ * set on it or given to a handler of its own. Local calls then skip what
+ * only the remote protocol does, such as hedging and priority classes.
+ */
+public class LocalRoutingClientProtocol implements ClientProtocolPlugin {
+	
+	/**
+	 * Protocol used for this host
+	 */
+	private final ClientProtocolPlugin local;
+	
+	/**
+	 * Protocol used for the other hosts
+	 */
+	private final ClientProtocolPlugin remote;
+	
+	/**
+	 * Maps the host names already seen to whether they are local
+	 */
+	private final Map<String, Boolean> localHosts = new ConcurrentHashMap<String, Boolean>();
+	
+	/**
+	 * Tells whether the local protocol reaches the server on a port
+	 */
+	private final IntPredicate listening;
+	
+	/**
+	 * Maps the ports of the local servers already seen to whether the local protocol reaches them
+	 */
+	private final Map<Integer, Boolean> localPorts = new ConcurrentHashMap<Integer, Boolean>();
+	
+	/**
+	 * Routes local calls through Unix domain sockets and the others through TCP
+	 */
+	public LocalRoutingClientProtocol() {
+		this(new UnixDomainClientProtocol(), new DefaultClientProtocol());
+	}
+	
+	/**
+	 * @param local protocol used for this host
+	 * @param remote protocol used for the other hosts
+	 */
+	public LocalRoutingClientProtocol(ClientProtocolPlugin local, ClientProtocolPlugin remote) {
+		this.local = local;
+		this.remote = remote;
+		this.listening = local instanceof UnixDomainClientProtocol ? ((UnixDomainClientProtocol) local)::isListening
+				: port -> true;
+	}
+	
+	@Override
+	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg) throws RemoteError {
+		return send(host, port, msg, OperationOptions.DEFAULT);
+	}
+	
+	@Override
+	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg, OperationOptions options) throws RemoteError {
+		ClientProtocolPlugin protocol = route(host, port);
+		if(protocol == remote) {
+			return remote.send(host, port, msg, options);
+		}
+		try {
+			return local.send(host, port, msg, options);
+		} catch (RemoteError e) {
+			// the server may be gone or back without its socket, the next call checks again
+			localPorts.remove(port);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Shuts down both protocols
+	 */
+	@Override
+	public void shutdown() throws RemoteError {
+		try {
+			local.shutdown();
+		} finally {
+			remote.shutdown();
+		}
+	}
+	
+	private ClientProtocolPlugin route(String host, int port) {
+		if(!localHosts.computeIfAbsent(host, LocalRoutingClientProtocol::isLocal)) {
+			return remote;
+		}
+		return localPorts.computeIfAbsent(port, listening::test) ? local : remote;
+	}
+	
+	/**
+	 * Checks if the host name resolves to an address of this machine
+	 * @param host the host name
+	 * @return true if the host is this machine
+	 */
+	static boolean isLocal(String host) {
+		try {
+			for(InetAddress address : InetAddress.getAllByName(host)) {
+				if(address.isLoopbackAddress() || address.isAnyLocalAddress()
+						|| NetworkInterface.getByInetAddress(address) != null) {
+					return true;
+				}
+			}
+		} catch (UnknownHostException | SocketException e) {
+			return false;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,74 @@
+package implementation;
+
+import interfaces.SpanExporter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exports spans as lines of text, one span per line, e.g.
+ * <pre>
+ * trace=4f1c... span=9a02... parent=0000... kind=client name=pi start=1700000000000 durationUs=812 error=-
+ * </pre>
+ * Lines of the same trace can be grepped together to find slow hops.
+ */
+public class LogSpanExporter implements SpanExporter, Closeable {
+
+	private final Writer writer;
+
+	/**
+	 * Appends spans to a file, creating it if needed
+	 *
+	 * @param file the log file
+	 * @throws IOException if the file can't be opened
+	 */
+	public LogSpanExporter(Path file) throws IOException {
+		this(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+	}
+
+	public LogSpanExporter(Writer writer) {
+		this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+	}
+
+	@Override
+	public void export(Span span) {
+		StringBuilder line = new StringBuilder(160)
+				.append("trace=").append(hex(span.getTraceId()))
+				.append(" span=").append(hex(span.getSpanId()))
+				.append(" parent=").append(hex(span.getParentSpanId()))
+				.append(" kind=").append(span.getKind())
+				.append(" name=").append(span.getName())
+				.append(" start=").append(span.getStartMillis())
+				.append(" durationUs=").append(span.getDurationNanos() / 1000L)
+				.append(" error=").append(span.getError() == null ? "-" : span.getError())
+				.append('\n');
+		synchronized(writer) {
+			try {
+				writer.write(line.toString());
+				writer.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized(writer) {
+			writer.close();
+		}
+	}
+
+	private static String hex(long id) {
+		String s = Long.toHexString(id);
+		return "0000000000000000".substring(s.length()) + s;
+	}
+
+}
@@ -0,0 +1,109 @@
+package implementation;
+
+import interfaces.Marshaller;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the codecs a call may be marshalled with, each under a name, as
+ * used by the interface descriptions, and a one byte tag, as carried in
+ * the header of the frames. The server reads each request with the
+ * codec of its tag and replies with the same one, so the operations of
+ * an interface can move to another codec one at a time, on the same
+ * connections. Frames tagged {@value #DEFAULT} use the marshaller the
+ * server was created with, as they did before frames had tags.
+ */
+public final class MarshallerRegistry {
+
+	/**
+	 * Tag of the frames marshalled with the default marshaller of the server
+	 */
+	public static final int DEFAULT = 0;
+
+	/**
+	 * Tags of the codecs always registered
+	 */
+	public static final int JAVA = 1;
+	public static final int COMPACT = 2;
+	public static final int JSON = 3;
+
+	/**
+	 * Maps the tag to the codec
+	 */
+	private static final AtomicReferenceArray<Marshaller> codecs = new AtomicReferenceArray<Marshaller>(256);
+
+	/**
+	 * Maps the name to the tag
+	 */
+	private static final Map<String, Integer> tags = new ConcurrentHashMap<String, Integer>();
+
+	static {
+		register(JAVA, "java", new JavaMarshaller());
+		register(COMPACT, "compact", new CompactMarshaller());
+		register(JSON, "json", new JsonMarshaller());
+	}
+
+	private MarshallerRegistry() {
+	}
+
+	/**
+	 * Gets a codec by tag
+	 * @param tag the tag, as read from a frame
+	 * @return the codec
+	 * @throws IllegalArgumentException if there is no codec with that tag
+	 */
+	public static Marshaller get(int tag) {
+		Marshaller marshaller = tag > DEFAULT && tag < codecs.length() ? codecs.get(tag) : null;
+		if(marshaller == null) {
+			throw new IllegalArgumentException("no codec with tag " + tag);
+		}
+		return marshaller;
+	}
+
+	/**
+	 * Gets the tag of a codec
+	 * @param name the codec name, e.g. "compact"
+	 * @return the tag
+	 * @throws IllegalArgumentException if there is no codec with that name
+	 */
+	public static int tagOf(String name) {
+		Integer tag = tags.get(name);
+		if(tag == null) {
+			throw new IllegalArgumentException("no codec named " + name);
+		}
+		return tag;
+	}
+
+	/**
+	 * Gets a codec by name
+	 * @param name the codec name, e.g. "compact"
+	 * @return the codec
+	 * @throws IllegalArgumentException if there is no codec with that name
+	 */
+	public static Marshaller forName(String name) {
+		return get(tagOf(name));
+	}
+
+	/**
+	 * Registers a codec. Clients and servers must register it under the same tag
+	 * @param tag the tag, from 1 to 255
+	 * @param name the name the interface descriptions use
+	 * @param marshaller the codec, shared by every call
+	 * @throws IllegalArgumentException if the tag or the name is already in use
+	 */
+	public static synchronized void register(int tag, String name, Marshaller marshaller) {
+		if(tag <= DEFAULT || tag >= codecs.length()) {
+			throw new IllegalArgumentException("codec tags go from 1 to " + (codecs.length() - 1) + ", got " + tag);
+		}
+		if(marshaller == null) {
+			throw new IllegalArgumentException("marshaller cannot be null");
+		}
+		if(codecs.get(tag) != null || tags.containsKey(name)) {
+			throw new IllegalArgumentException("a codec named " + name + " or tagged " + tag + " already exists");
+		}
+		codecs.set(tag, marshaller);
+		tags.put(name, tag);
+	}
+}
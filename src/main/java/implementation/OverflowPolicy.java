@@ -0,0 +1,23 @@
+package implementation;
+
+/**
+ * What {@link DefaultClientProtocol} does with a call when its
+ * request queue is full
+ */
+public enum OverflowPolicy {
+	
+	/**
+	 * Waits for room in the queue up to a timeout, then fails the call
+	 */
+	BLOCK,
+	
+	/**
+	 * Fails the call right away
+	 */
+	FAIL_FAST,
+	
+	/**
+	 * Sends the call on the calling thread
+	 */
+	CALLER_RUNS
+}
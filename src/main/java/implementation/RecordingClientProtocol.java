@@ -0,0 +1,235 @@
+package implementation;
+
+import exception.RemoteError;
+import interfaces.ClientProtocolPlugin;
+import model.OperationOptions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Protocol which records the calls sent through another protocol into a
+ * capture file, to be played back by the replayer of the loadtest
+ * package. The file is memory mapped and only appended to: each call is
+ * copied into it by the calling thread once the reply arrives, without
+ * a system call unless the file has to grow.
+ *
+ * <pre>
+ * file   = magic:int version:byte start:long (epoch ms) record*
+ * record = length:int (of the rest, written last, 0 ends the file)
+ *          sent:varlong (ns since start) elapsed:varlong (ns)
+ *          flags:byte (1 idempotent, 2 hedged, 4 failed, priority class &lt;&lt; 4)
+ *          codec:byte (the {@link MarshallerRegistry} tag of the request)
+ *          host:bytes port:varint request:bytes reply:bytes
+ * bytes  = length:varint content
+ * </pre>
+ *
+ * Requests and replies are the marshalled messages, as sent; the reply
+ * of a failed call is the message of its error, in UTF-8. The file
+ * grows a segment at a time and is cut to its content when closed.
+ * Files of version 1 have no codec, their calls all used the default one.
+ *
+ * @see CaptureReader
+ */
+public class RecordingClientProtocol implements ClientProtocolPlugin {
+
+	static final int MAGIC = 0x52434150;
+
+	static final int VERSION = 2;
+
+	static final int IDEMPOTENT = 1;
+	static final int HEDGED = 2;
+	static final int FAILED = 4;
+	static final int PRIORITY_SHIFT = 4;
+
+	/**
+	 * Bytes mapped at a time
+	 */
+	private static final int SEGMENT_SIZE = 64 << 20;
+
+	/**
+	 * Room taken by the fixed fields of a record at most: length, two
+	 * varlongs, flags, codec and the four varint lengths
+	 */
+	private static final int MAX_OVERHEAD = 4 + 10 + 10 + 1 + 1 + 4 * 5;
+
+	private final ClientProtocolPlugin delegate;
+
+	private final FileChannel channel;
+
+	/**
+	 * Capture start, which the send times are relative to
+	 */
+	private final long startNanos;
+
+	/**
+	 * The mapped segment being written, and where it starts in the file
+	 */
+	private MappedByteBuffer segment;
+	private long segmentStart;
+
+	/**
+	 * Set once the file is closed or failed; calls are then only forwarded
+	 */
+	private boolean closed;
+
+	/**
+	 * Why recording stopped before the file was closed, raised by {@link #close()}
+	 */
+	private IOException failure;
+
+	/**
+	 * Writes the bytes of the messages straight into the segment
+	 */
+	private final OutputStream segmentOutput = new OutputStream() {
+		@Override
+		public void write(int b) {
+			segment.put((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			segment.put(b, off, len);
+		}
+	};
+
+	/**
+	 * Records the calls of a protocol into a new capture file
+	 * @param delegate the protocol which sends the calls
+	 * @param file the capture file, replaced if it exists
+	 * @throws IOException if the file can't be created
+	 */
+	public RecordingClientProtocol(ClientProtocolPlugin delegate, Path file) throws IOException {
+		this.delegate = delegate;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.startNanos = System.nanoTime();
+		this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0L, SEGMENT_SIZE);
+		segment.putInt(MAGIC);
+		segment.put((byte) VERSION);
+		segment.putLong(System.currentTimeMillis());
+	}
+
+	@Override
+	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg) throws RemoteError {
+		return send(host, port, msg, OperationOptions.DEFAULT);
+	}
+
+	@Override
+	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg, OperationOptions options) throws RemoteError {
+		long sent = System.nanoTime();
+		ByteArrayInputStream reply;
+		try {
+			reply = delegate.send(host, port, msg, options);
+		} catch (RemoteError e) {
+			String error = String.valueOf(e.getMessage());
+			record(sent, host, port, msg, options, true, error.getBytes(StandardCharsets.UTF_8));
+			throw e;
+		}
+		byte[] bytes = new byte[reply.available()];
+		reply.read(bytes, 0, bytes.length);
+		reply.reset();
+		record(sent, host, port, msg, options, false, bytes);
+		return reply;
+	}
+
+	/**
+	 * Appends a call to the file
+	 */
+	private synchronized void record(long sent, String host, int port, ByteArrayOutputStream msg,
+			OperationOptions options, boolean failed, byte[] reply) {
+		long elapsed = System.nanoTime() - sent;
+		if(closed) {
+			return;
+		}
+		byte[] hostBytes = host.getBytes(StandardCharsets.UTF_8);
+		try {
+			reserve(MAX_OVERHEAD + hostBytes.length + msg.size() + reply.length);
+			int start = segment.position();
+			segment.putInt(0);
+			putVarint64(sent - startNanos);
+			putVarint64(elapsed);
+			segment.put((byte) ((options.isIdempotent() ? IDEMPOTENT : 0) | (options.isHedged() ? HEDGED : 0)
+					| (failed ? FAILED : 0) | options.getPriority().ordinal() << PRIORITY_SHIFT));
+			segment.put((byte) Frames.codecOf(msg));
+			putBytes(hostBytes);
+			putVarint64(port);
+			putVarint64(msg.size());
+			msg.writeTo(segmentOutput);
+			putBytes(reply);
+			// the length goes last, so a record cut short reads as the end of the file
+			segment.putInt(start, segment.position() - start - 4);
+		} catch (IOException | RuntimeException e) {
+			closed = true;
+			failure = new IOException("capture cut short after " + (segmentStart + segment.position())
+					+ " bytes, the later calls were not recorded", e);
+		}
+	}
+
+	/**
+	 * Makes room for a record, mapping the next segment from the end of the
+	 * content if the current one is too short
+	 */
+	private void reserve(int size) throws IOException {
+		if(segment.remaining() >= size + 4) {
+			return;
+		}
+		segmentStart += segment.position();
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, Math.max(SEGMENT_SIZE, size + 4));
+	}
+
+	private void putVarint64(long value) {
+		while((value & ~0x7FL) != 0L) {
+			segment.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		segment.put((byte) value);
+	}
+
+	private void putBytes(byte[] bytes) {
+		putVarint64(bytes.length);
+		segment.put(bytes);
+	}
+
+	/**
+	 * Flushes the capture file and cuts it to its content, leaving
+	 * the protocol forwarding calls without recording them
+	 * @throws IOException if the file can't be written, or if recording
+	 * failed earlier, in which case the file holds the calls before the failure
+	 */
+	public synchronized void close() throws IOException {
+		if(channel.isOpen()) {
+			closed = true;
+			segment.force();
+			try {
+				channel.truncate(segmentStart + segment.position());
+			} finally {
+				channel.close();
+			}
+		}
+		if(failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Closes the capture file and shuts the recorded protocol down
+	 */
+	@Override
+	public void shutdown() throws RemoteError {
+		try {
+			close();
+		} catch (IOException e) {
+			delegate.shutdown();
+			throw new RemoteError(e);
+		}
+		delegate.shutdown();
+	}
+}
@@ -0,0 +1,84 @@
+package implementation;
+
+import exception.RemoteError;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides if and when a failed invocation of an idempotent operation
+ * is sent again. Waits grow exponentially and are fully jittered, so
+ * callers that failed together do not retry together.
+ */
+public class RetryPolicy {
+
+	/**
+	 * Three attempts, waiting up to 10ms then up to 20ms
+	 */
+	public static final RetryPolicy DEFAULT = new RetryPolicy(3, 10L, 1000L);
+
+	/**
+	 * Sends every invocation exactly once
+	 */
+	public static final RetryPolicy NONE = new RetryPolicy(1, 0L, 0L);
+
+	private final int maxAttempts;
+
+	private final long baseDelayMillis;
+
+	private final long maxDelayMillis;
+
+	/**
+	 * @param maxAttempts maximum number of times an invocation is sent
+	 * @param baseDelayMillis upper bound of the wait before the first retry
+	 * @param maxDelayMillis upper bound of the wait before any retry
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+		if(maxAttempts <= 0) {
+			throw new IllegalArgumentException("maxAttempts must be positive, got " + maxAttempts);
+		}
+		if(baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+			throw new IllegalArgumentException("invalid delays " + baseDelayMillis + ", " + maxDelayMillis);
+		}
+		this.maxAttempts = maxAttempts;
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Only transport failures are retried, errors reported by the
+	 * remote object would just happen again, as would malformed or
+	 * oversized frames
+	 *
+	 * @param error the failure of the last attempt
+	 * @return true if the error was caused by the network
+	 */
+	public boolean isRetryable(RemoteError error) {
+		return error.getCause() instanceof IOException && !(error.getCause() instanceof ProtocolException);
+	}
+
+	/**
+	 * Sleeps before the given retry
+	 *
+	 * @param retry the number of the retry, starting at 1
+	 * @throws RemoteError if interrupted while waiting
+	 */
+	public void backoff(int retry) throws RemoteError {
+		long bound = Math.min(maxDelayMillis, baseDelayMillis << Math.min(retry - 1, 20));
+		if(bound <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteError(e);
+		}
+	}
+
+}
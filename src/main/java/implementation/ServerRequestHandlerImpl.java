@@ -0,0 +1,654 @@
+package implementation;
+
+import exception.RemoteError;
+import interfaces.ClientRequestHandler;
+import interfaces.Invoker;
+import interfaces.Marshaller;
+import interfaces.ServerRequestHandler;
+import interfaces.SpanExporter;
+import model.AbsoluteObjectReference;
+import model.ExecutionStrategy;
+import model.ObjectId;
+import model.SocketOptionsProfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.ProtocolException;
+import java.net.ProtocolFamily;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Default Server Request Handler. Reads the frames sent by
+ * {@link DefaultClientProtocol}, one thread per connection, and
+ * replies with the marshalled return of the operation, or with
+ * the RemoteError it raised.
+ * 
+ * Concurrent invocations of coalesced operations with equal
+ * object, operation and marshalled arguments run only once.
+ * 
+ * Each request is read and answered with the codec its frame is
+ * tagged with, as registered in the {@link MarshallerRegistry}, and
+ * requests without a tag with the marshaller of the handler.
+ * 
+ * Operations run on the connection thread unless their invoker
+ * says otherwise: pooled ones on a bounded pool, so only so many
+ * block at once, and virtual ones on a virtual thread each.
+ * 
+ * On runtimes with Unix domain sockets the handler also listens on the
+ * socket {@link UnixDomainClientProtocol} looks for, formatting its path
+ * pattern with the port, {@link UnixDomainClientProtocol#DEFAULT_PATH_PATTERN}
+ * unless set otherwise, and serves the calls of the same host there as it
+ * does over TCP.
+ */
+public class ServerRequestHandlerImpl implements ServerRequestHandler {
+	
+	/**
+	 * Default number of threads running the pooled operations
+	 */
+	public static final int DEFAULT_POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * Port to listen to, 0 to pick any free port
+	 */
+	private final int requestedPort;
+	
+	private final Marshaller marshaller;
+	
+	/**
+	 * Maps the invoker id to the invoker
+	 */
+	private final Map<Integer, Invoker> invokers = new ConcurrentHashMap<Integer, Invoker>();
+	
+	/**
+	 * Replies of the coalesced invocations in flight
+	 */
+	private final SingleFlight<CoalescingKey, byte[]> coalesced = new SingleFlight<CoalescingKey, byte[]>();
+	
+	/**
+	 * Open client connections
+	 */
+	private final Set<Closeable> connections = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * Runs the accepting loop and the connections
+	 */
+	private final ExecutorService connectionsExecutor = Executors.newCachedThreadPool();
+	
+	/**
+	 * Run the operations which don't run on the connection thread
+	 */
+	private final ExecutorService pooledExecutor;
+	private final ExecutorService virtualExecutor = virtualThreads();
+	
+	private volatile ServerSocket serverSocket;
+	
+	/**
+	 * Unix domain socket and its path, null if the runtime has no Unix domain sockets
+	 */
+	private volatile ServerSocketChannel localChannel;
+	private volatile Path localPath;
+	
+	/**
+	 * Pattern formatted with the port to get the path of the Unix domain socket, null to listen on TCP only
+	 */
+	private volatile String localPathPattern = UnixDomainClientProtocol.DEFAULT_PATH_PATTERN;
+	
+	/**
+	 * Exports server spans, null if tracing is disabled
+	 */
+	private volatile SpanExporter spanExporter;
+	
+	/**
+	 * Options of the accepted sockets
+	 */
+	private volatile SocketOptionsProfile socketOptions = SocketOptionsProfile.DEFAULT;
+	
+	/**
+	 * Largest request accepted, in bytes
+	 */
+	private volatile int maxFrameSize = Frames.DEFAULT_MAX_SIZE;
+	
+	/**
+	 * Creates the handler listening to the default port
+	 */
+	public ServerRequestHandlerImpl() {
+		this(ClientRequestHandler.defaultPort);
+	}
+	
+	/**
+	 * @param port port to listen to, 0 to pick any free port
+	 */
+	public ServerRequestHandlerImpl(int port) {
+		this(port, new JavaMarshaller());
+	}
+	
+	/**
+	 * @param port port to listen to, 0 to pick any free port
+	 * @param marshaller the marshaller of the requests which don't name a codec
+	 */
+	public ServerRequestHandlerImpl(int port, Marshaller marshaller) {
+		this(port, marshaller, DEFAULT_POOL_SIZE);
+	}
+	
+	/**
+	 * @param port port to listen to, 0 to pick any free port
+	 * @param marshaller the marshaller of the requests which don't name a codec
+	 * @param poolSize number of threads running the pooled operations
+	 */
+	public ServerRequestHandlerImpl(int port, Marshaller marshaller, int poolSize) {
+		if(poolSize <= 0) {
+			throw new IllegalArgumentException("poolSize must be positive, got " + poolSize);
+		}
+		this.requestedPort = port;
+		this.marshaller = marshaller;
+		this.pooledExecutor = Executors.newFixedThreadPool(poolSize, task -> {
+			Thread thread = new Thread(task, "pooled operation");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Creates an executor starting a virtual thread per task, through
+	 * reflection so the project still builds for older targets, or
+	 * a cached pool of daemon threads on runtimes older than Java 21
+	 */
+	private static ExecutorService virtualThreads() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, "virtual operation");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+	
+	@Override
+	public void register(int invokerId, Invoker invoker) {
+		invokers.put(invokerId, invoker);
+	}
+	
+	/**
+	 * Traces every invocation as a child of the client span, if any
+	 * @param spanExporter exporter of the server spans, null to disable tracing
+	 */
+	public void setSpanExporter(SpanExporter spanExporter) {
+		this.spanExporter = spanExporter;
+	}
+	
+	/**
+	 * @param socketOptions options of the sockets accepted from now on
+	 */
+	public void setSocketOptions(SocketOptionsProfile socketOptions) {
+		this.socketOptions = socketOptions;
+	}
+	
+	/**
+	 * Requests over the limit are answered with a RemoteError without being
+	 * read, and their connection is closed
+	 * @param maxFrameSize largest request accepted from now on, in bytes
+	 */
+	public void setMaxFrameSize(int maxFrameSize) {
+		if(maxFrameSize <= 0) {
+			throw new IllegalArgumentException("maxFrameSize must be positive, got " + maxFrameSize);
+		}
+		this.maxFrameSize = maxFrameSize;
+	}
+	
+	/**
+	 * Sets where the Unix domain socket is created when the handler starts. Local
+	 * clients find it if their {@link UnixDomainClientProtocol} has the same pattern,
+	 * see {@link UnixDomainClientProtocol#getPathPattern()}
+	 * @param localPathPattern pattern formatted with the port to get the socket path,
+	 * e.g. "/run/app/idl-%d.sock", or null to listen on TCP only
+	 */
+	public void setLocalPathPattern(String localPathPattern) {
+		this.localPathPattern = localPathPattern;
+	}
+	
+	@Override
+	public void start() throws RemoteError {
+		try {
+			serverSocket = new ServerSocket(requestedPort);
+		} catch (IOException e) {
+			throw new RemoteError(e);
+		}
+		connectionsExecutor.submit(() -> accept());
+		listenLocally();
+	}
+	
+	/**
+	 * Listens on the Unix domain socket of the port, replacing the file a previous
+	 * server may have left behind, using the Java 16 API through reflection so the
+	 * project still builds for older targets. Does nothing without a path pattern or
+	 * on older runtimes, and if the socket can't be bound local clients keep using
+	 * TCP, as they only use the socket when they can connect to it
+	 */
+	private void listenLocally() {
+		String pattern = localPathPattern;
+		if(pattern == null) {
+			return;
+		}
+		Path path = Paths.get(String.format(pattern, getPort()));
+		SocketAddress address;
+		ServerSocketChannel channel;
+		try {
+			ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+			Method of = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+			address = (SocketAddress) of.invoke(null, path);
+			channel = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class)
+					.invoke(null, unix);
+		} catch (ReflectiveOperationException | IllegalArgumentException e) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(path);
+			channel.bind(address);
+		} catch (IOException e) {
+			e.printStackTrace();
+			try {
+				channel.close();
+			} catch (IOException e1) {
+				e1.printStackTrace();
+			}
+			return;
+		}
+		localPath = path;
+		localChannel = channel;
+		connectionsExecutor.submit(() -> acceptLocal(channel));
+	}
+	
+	@Override
+	public int getPort() {
+		ServerSocket s = serverSocket;
+		return s == null ? requestedPort : s.getLocalPort();
+	}
+	
+	@Override
+	public void shutdown() throws RemoteError {
+		IOException error = null;
+		try {
+			if(serverSocket != null) {
+				serverSocket.close();
+			}
+		} catch (IOException e) {
+			error = e;
+		}
+		try {
+			if(localChannel != null) {
+				localChannel.close();
+				Files.deleteIfExists(localPath);
+			}
+		} catch (IOException e) {
+			error = e;
+		}
+		for(Closeable connection : connections) {
+			try {
+				connection.close();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		connectionsExecutor.shutdownNow();
+		pooledExecutor.shutdownNow();
+		virtualExecutor.shutdownNow();
+		if(error != null) {
+			throw new RemoteError(error);
+		}
+	}
+	
+	private void accept() {
+		while(!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				connections.add(socket);
+				connectionsExecutor.submit(() -> serve(socket));
+			} catch (IOException e) {
+				if(!serverSocket.isClosed()) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	private void acceptLocal(ServerSocketChannel channel) {
+		while(channel.isOpen()) {
+			try {
+				SocketChannel connection = channel.accept();
+				connections.add(connection);
+				connectionsExecutor.submit(() -> serve(connection));
+			} catch (IOException e) {
+				if(channel.isOpen()) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Answers the requests of a TCP connection
+	 * @param socket the connection
+	 * @see #serve(InputStream, OutputStream)
+	 */
+	private void serve(Socket socket) {
+		try {
+			Connector.configure(socket, socketOptions);
+			serve(socket.getInputStream(), socket.getOutputStream());
+		} catch (IOException e) {
+			if(!socket.isClosed()) {
+				e.printStackTrace();
+			}
+		} finally {
+			connections.remove(socket);
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Answers the requests of a Unix domain socket connection
+	 * @param channel the connection
+	 * @see #serve(InputStream, OutputStream)
+	 */
+	private void serve(SocketChannel channel) {
+		try {
+			serve(Channels.newInputStream(channel), Channels.newOutputStream(channel));
+		} catch (IOException e) {
+			if(channel.isOpen()) {
+				e.printStackTrace();
+			}
+		} finally {
+			connections.remove(channel);
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Answers the requests of a connection until the client closes it,
+	 * or sends a malformed or oversized frame or one in a codec it doesn't
+	 * know. Requests are answered in the framing they came in, with a header
+	 * or as older clients expect, and in their codec
+	 * @param input the stream of the requests
+	 * @param output the stream of the replies
+	 */
+	private void serve(InputStream input, OutputStream output) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+		List<AbsoluteObjectReference> references = new ArrayList<AbsoluteObjectReference>();
+		while(true) {
+			int first;
+			try {
+				first = in.readInt();
+			} catch (EOFException e) {
+				break;
+			}
+			boolean framed = Frames.isHeader(first);
+			int codec = framed ? Frames.codecOf(first) : MarshallerRegistry.DEFAULT;
+			Marshaller codecMarshaller = marshallerOf(codec);
+			int length;
+			try {
+				if(framed) {
+					Frames.checkHeader(first);
+				}
+				length = Frames.checkLength(framed ? in.readInt() : first, maxFrameSize);
+			} catch (ProtocolException e) {
+				// the rest of the frame is never read, so the connection can't go on
+				if(codecMarshaller == null) {
+					codec = MarshallerRegistry.DEFAULT;
+					codecMarshaller = marshaller;
+				}
+				reply(out, framed, codec, codecMarshaller.marshal(new RemoteError(e)).toByteArray());
+				break;
+			}
+			byte[] request = new byte[length];
+			in.readFully(request);
+			
+			if(codecMarshaller == null) {
+				// answered in the default codec, which the client tells from the tag; the references
+				// the request may have defined are lost, so the connection can't go on either
+				reply(out, framed, MarshallerRegistry.DEFAULT,
+						marshaller.marshal(new RemoteError("Unknown codec " + codec)).toByteArray());
+				break;
+			}
+			reply(out, framed, codec, handle(request, references, codecMarshaller));
+		}
+	}
+	
+	private static void reply(DataOutputStream out, boolean framed, int codec, byte[] reply) throws IOException {
+		if(framed) {
+			Frames.writeHeader(out, codec);
+		}
+		out.writeInt(reply.length);
+		out.write(reply);
+		out.flush();
+	}
+	
+	/**
+	 * @param codec the codec tag of a frame
+	 * @return the marshaller of the codec, or null if none is registered with the tag
+	 */
+	private Marshaller marshallerOf(int codec) {
+		if(codec == MarshallerRegistry.DEFAULT) {
+			return marshaller;
+		}
+		try {
+			return MarshallerRegistry.get(codec);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Executes a request
+	 * @param request the marshalled invocation, as an {@link InvocationMessage} frame or plain
+	 * @param references the object references defined on the connection, by handle
+	 * @param marshaller the marshaller of the codec of the request, which the reply is marshalled with
+	 * @return the marshalled reply
+	 */
+	private byte[] handle(byte[] request, List<AbsoluteObjectReference> references, Marshaller marshaller) throws IOException {
+		Object result;
+		try {
+			Invocation invocation = unmarshal(request, references, marshaller);
+			InvocationData data = invocation.getInvocationData();
+			Invoker invoker = invokers.get(data.getAor().getInvokerId());
+			if(invoker == null) {
+				throw new RemoteError("No invoker with id " + data.getAor().getInvokerId());
+			}
+			
+			if(invoker.isCoalesced(data.getOperationName())) {
+				// the codec is part of the key, as the shared reply is marshalled with it
+				CoalescingKey key = new CoalescingKey(marshaller, data.getAor(), data.getOperationName(),
+						marshaller.marshal(data.getActualParams()).toByteArray());
+				return coalesced.execute(key, () -> marshaller.marshal(execute(invoker, invocation)).toByteArray());
+			}
+			result = execute(invoker, invocation);
+		} catch (RemoteError e) {
+			result = e;
+		} catch (Exception e) {
+			result = new RemoteError(e);
+		}
+		return marshaller.marshal(result).toByteArray();
+	}
+	
+	/**
+	 * Reads the invocation of a frame, taking its object reference from the
+	 * references of the connection when the frame names it by handle
+	 * @param references the object references defined on the connection, by handle
+	 * @param marshaller the marshaller of the codec of the request
+	 */
+	private static Invocation unmarshal(byte[] request, List<AbsoluteObjectReference> references, Marshaller marshaller)
+			throws IOException, ClassNotFoundException, RemoteError {
+		int marker = request.length < 8 ? 0 : InvocationMessage.readInt(request, 0);
+		AbsoluteObjectReference aor;
+		int handle;
+		int offset;
+		switch(marker) {
+			case InvocationMessage.INLINE:
+				offset = 8 + InvocationMessage.readInt(request, 4);
+				aor = unmarshalReference(request, 8, offset, marshaller);
+				break;
+			case InvocationMessage.DEFINE:
+				handle = InvocationMessage.readInt(request, 4);
+				if(handle != references.size() || handle >= InvocationMessage.MAX_HANDLES) {
+					throw new RemoteError("Unexpected reference handle " + handle);
+				}
+				// taken before reading the reference, so the handles stay in step with the client's if it fails
+				references.add(null);
+				offset = 12 + InvocationMessage.readInt(request, 8);
+				aor = unmarshalReference(request, 12, offset, marshaller);
+				references.set(handle, aor);
+				break;
+			case InvocationMessage.USE:
+				handle = InvocationMessage.readInt(request, 4);
+				aor = handle >= 0 && handle < references.size() ? references.get(handle) : null;
+				if(aor == null) {
+					throw new RemoteError("Unknown reference handle " + handle);
+				}
+				offset = 8;
+				break;
+			default:
+				return marshaller.unmarshal(new ByteArrayInputStream(request), Invocation.class);
+		}
+		Invocation invocation = marshaller.unmarshal(
+				new ByteArrayInputStream(request, offset, request.length - offset), Invocation.class);
+		invocation.getInvocationData().setAor(aor);
+		return invocation;
+	}
+	
+	private static AbsoluteObjectReference unmarshalReference(byte[] request, int from, int to, Marshaller marshaller)
+			throws IOException, ClassNotFoundException, RemoteError {
+		if(to < from || to > request.length) {
+			throw new RemoteError("Reference overruns the frame");
+		}
+		return marshaller.unmarshal(new ByteArrayInputStream(request, from, to - from), AbsoluteObjectReference.class);
+	}
+	
+	/**
+	 * Invokes the operation where its invoker says it runs, waiting for it
+	 * @return the return of the operation, or the error it raised
+	 */
+	private Object execute(Invoker invoker, Invocation invocation) throws RemoteError {
+		ExecutionStrategy strategy = invoker.getExecution(invocation.getInvocationData().getOperationName());
+		if(strategy == ExecutionStrategy.INLINE) {
+			return invoke(invoker, invocation);
+		}
+		ExecutorService executor = strategy == ExecutionStrategy.POOLED ? pooledExecutor : virtualExecutor;
+		try {
+			Future<Object> result = executor.submit(() -> invoke(invoker, invocation));
+			try {
+				return result.get();
+			} catch (InterruptedException e) {
+				result.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new RemoteError(e);
+			}
+		} catch (ExecutionException | RejectedExecutionException e) {
+			throw new RemoteError(e);
+		}
+	}
+	
+	/**
+	 * Invokes the operation, tracing it if enabled
+	 * @return the return of the operation, or the error it raised
+	 */
+	private Object invoke(Invoker invoker, Invocation invocation) {
+		SpanExporter exporter = spanExporter;
+		Span span = exporter == null ? null : TraceContext.extract(invocation);
+		RemoteError error = null;
+		try {
+			return invoker.invoke(invocation);
+		} catch (RemoteError e) {
+			error = e;
+			return e;
+		} catch (Exception e) {
+			error = new RemoteError(e);
+			return error;
+		} finally {
+			if(span != null) {
+				if(error == null) {
+					TraceContext.close(span);
+				} else {
+					TraceContext.close(span, error);
+				}
+				exporter.export(span);
+			}
+		}
+	}
+	
+	/**
+	 * Identifies invocations which can share a single execution
+	 */
+	private static final class CoalescingKey {
+		private final Marshaller codec;
+		private final int invokerId;
+		private final ObjectId objectId;
+		private final String operationName;
+		private final byte[] arguments;
+		private final int hash;
+		
+		CoalescingKey(Marshaller codec, AbsoluteObjectReference aor, String operationName, byte[] arguments) {
+			this.codec = codec;
+			this.invokerId = aor.getInvokerId();
+			this.objectId = aor.getObjectId();
+			this.operationName = operationName;
+			this.arguments = arguments;
+			this.hash = 31 * (31 * (31 * invokerId + Objects.hashCode(objectId)) + operationName.hashCode())
+					+ Arrays.hashCode(arguments);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof CoalescingKey)) {
+				return false;
+			}
+			CoalescingKey other = (CoalescingKey) obj;
+			return codec == other.codec && invokerId == other.invokerId && Objects.equals(objectId, other.objectId)
+					&& operationName.equals(other.operationName)
+					&& Arrays.equals(arguments, other.arguments);
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package implementation;
+
+import exception.RemoteError;
+import interfaces.ClientProtocolPlugin;
+import model.OperationOptions;
+import model.SocketOptionsProfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Protocol for clients with many threads calling at once, which share
+ * nothing on the way of a call. Each thread is pinned to a shard the
+ * first time it calls, round robin, and every shard owns its idle
+ * connections, the handles of the references sent on them and the
+ * resolver of its host names. Calls are sent on the caller thread,
+ * without the queue and pool of {@link DefaultClientProtocol}, so the
+ * only lock taken is the one of the shard, which with a shard per core
+ * is seldom contended.
+ *
+ * Calls aren't scheduled: priority classes and hedging are ignored.
+ * Connections left idle longer than the time limit are closed when
+ * the shard next checks a connection in or out.
+ */
+public class ShardedClientProtocol implements ClientProtocolPlugin {
+
+	/**
+	 * Default time (in milliseconds) idle connections are kept
+	 */
+	public static final long DEFAULT_TIME_LIMIT = 10000L;
+
+	private final Shard[] shards;
+
+	/**
+	 * Shard of the next thread calling for the first time
+	 */
+	private final AtomicInteger nextShard = new AtomicInteger();
+
+	/**
+	 * Shard each thread is pinned to
+	 */
+	private final ThreadLocal<Shard> shard = ThreadLocal.withInitial(this::assign);
+
+	/**
+	 * Maximum time (in milliseconds) a connection can be alive and not used
+	 */
+	private final long timeLimit;
+
+	/**
+	 * Options of the sockets opened from now on
+	 */
+	private volatile SocketOptionsProfile socketOptions = SocketOptionsProfile.DEFAULT;
+
+	/**
+	 * Largest request or reply, in bytes
+	 */
+	private volatile int maxFrameSize = Frames.DEFAULT_MAX_SIZE;
+
+	private volatile boolean closed;
+
+	/**
+	 * Creates the protocol with a shard per available processor
+	 */
+	public ShardedClientProtocol() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_TIME_LIMIT);
+	}
+
+	/**
+	 * @param shards the number of shards, usually the number of cores
+	 * @param timeLimit time limit (in milliseconds) of keeping idle connections
+	 */
+	public ShardedClientProtocol(int shards, long timeLimit) {
+		if(shards <= 0) {
+			throw new IllegalArgumentException("shards must be positive, got " + shards);
+		}
+		if(timeLimit < 0) {
+			throw new IllegalArgumentException("timeLimit cannot be negative, got " + timeLimit);
+		}
+		this.shards = new Shard[shards];
+		for(int i = 0; i < shards; ++i) {
+			this.shards[i] = new Shard();
+		}
+		this.timeLimit = timeLimit;
+	}
+
+	private Shard assign() {
+		return shards[Math.floorMod(nextShard.getAndIncrement(), shards.length)];
+	}
+
+	/**
+	 * @return the number of shards
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Sets the options of the sockets opened from now on
+	 * @param socketOptions the options of the sockets
+	 */
+	public void setSocketOptions(SocketOptionsProfile socketOptions) {
+		this.socketOptions = socketOptions;
+	}
+
+	/**
+	 * Sets the largest request or reply of the calls, lowered by the limits
+	 * the operations declare. Larger requests fail before being sent; larger
+	 * replies fail as soon as their length is read, like a broken connection
+	 * @param maxFrameSize the limit in bytes
+	 */
+	public void setMaxFrameSize(int maxFrameSize) {
+		if(maxFrameSize <= 0) {
+			throw new IllegalArgumentException("maxFrameSize must be positive, got " + maxFrameSize);
+		}
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	@Override
+	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg) throws RemoteError {
+		return send(host, port, msg, OperationOptions.DEFAULT);
+	}
+
+	/**
+	 * Sends the data on a connection of the shard of the calling thread.
+	 * If the connection fails in any way, it is closed along with the idle connections
+	 * of the shard to the same address, which are likely stale too
+	 */
+	@Override
+	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg, OperationOptions options) throws RemoteError {
+		int limit = Frames.limit(options, maxFrameSize);
+		try {
+			Frames.checkLength(msg.size(), limit);
+		} catch (ProtocolException e) {
+			throw new RemoteError("request not sent", e);
+		}
+		if(closed) {
+			throw new RemoteError("protocol is shut down");
+		}
+		Shard shard = this.shard.get();
+		String address = host + ":" + port;
+		Connection con = shard.checkout(address, timeLimit);
+		if(con == null) {
+			con = shard.open(host, port, socketOptions);
+		}
+
+		DataOutputStream outToServer = con.getOutput();
+		DataInputStream inFromServer = con.getInput();
+		ByteArrayInputStream ret;
+		// set once the reply is read, any other way out leaves the connection in the middle of a frame
+		boolean replied = false;
+
+		try {
+			int codec = Frames.codecOf(msg);
+			Frames.writeHeader(outToServer, codec);
+			if(msg instanceof InvocationMessage) {
+				((InvocationMessage) msg).writeFrame(outToServer, con.getReferences());
+			} else {
+				outToServer.writeInt(msg.size());
+				msg.writeTo(outToServer);
+			}
+			outToServer.flush();
+
+			int length = Frames.readLength(inFromServer, limit, codec);
+			byte[] byteAns = new byte[length];
+
+			inFromServer.readFully(byteAns, 0, byteAns.length);
+			ret = new ByteArrayInputStream(byteAns);
+			replied = true;
+
+		} catch (IOException e) {
+			throw new RemoteError(e);
+		} finally {
+			if(!replied) {
+				shard.evict(con);
+			}
+		}
+
+		con.setCurrentDeathTime(System.currentTimeMillis() + timeLimit);
+		con.finish();
+		shard.checkin(con);
+		return ret;
+	}
+
+	/**
+	 * Closes every connection of every shard, those in use included
+	 * @throws RemoteError if a connection failed to close, after closing all the others
+	 */
+	@Override
+	public void shutdown() throws RemoteError {
+		closed = true;
+		RemoteError error = null;
+		for(Shard shard : shards) {
+			for(Connection con : shard.closeAll()) {
+				try {
+					con.close();
+				} catch (IOException e) {
+					if(error == null) {
+						error = new RemoteError("could not close every connection", e);
+					} else {
+						error.addSuppressed(e);
+					}
+				}
+			}
+		}
+		if(error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Connections of the threads pinned to one shard, guarded by its lock
+	 */
+	private static final class Shard {
+
+		/**
+		 * Idle connections by address, the most recently used last
+		 */
+		private final Map<String, ArrayDeque<Connection>> available = new HashMap<String, ArrayDeque<Connection>>();
+
+		/**
+		 * Every connection opened by the shard and not closed yet, idle or in use
+		 */
+		private final List<Connection> open = new ArrayList<Connection>();
+
+		/**
+		 * Resolves and connects for this shard only
+		 */
+		private final Connector connector = new Connector();
+
+		private boolean closed;
+
+		/**
+		 * Checks out the most recently used idle connection to an address,
+		 * closing the ones idle for too long
+		 * @return the connection, or null if there is none
+		 */
+		synchronized Connection checkout(String address, long timeLimit) {
+			ArrayDeque<Connection> idle = available.get(address);
+			if(idle == null) {
+				return null;
+			}
+			expire(idle);
+			Connection con;
+			while((con = idle.pollLast()) != null) {
+				if(con.use()) {
+					return con;
+				}
+				open.remove(con);
+			}
+			return null;
+		}
+
+		/**
+		 * Opens a connection, checked out
+		 */
+		Connection open(String host, int port, SocketOptionsProfile options) throws RemoteError {
+			Connection con;
+			try {
+				con = new Connection(host, port, connector.connect(host, port, options));
+			} catch (IOException e) {
+				throw new RemoteError(e);
+			}
+			con.use();
+			synchronized(this) {
+				if(!closed) {
+					open.add(con);
+					return con;
+				}
+			}
+			try {
+				con.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			throw new RemoteError("protocol is shut down");
+		}
+
+		/**
+		 * Makes a connection available again
+		 */
+		synchronized void checkin(Connection con) {
+			if(closed) {
+				return;
+			}
+			ArrayDeque<Connection> idle = available.computeIfAbsent(con.getAddress(), k -> new ArrayDeque<Connection>());
+			idle.addLast(con);
+			expire(idle);
+		}
+
+		/**
+		 * Closes the connections at the head of a queue whose time limit passed
+		 */
+		private void expire(ArrayDeque<Connection> idle) {
+			long now = System.currentTimeMillis();
+			Connection con;
+			while((con = idle.peekFirst()) != null && con.getCurrentDeathTime() <= now) {
+				idle.pollFirst();
+				open.remove(con);
+				try {
+					con.closeIfIdle();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		/**
+		 * Closes a broken connection and the idle ones to the same address
+		 */
+		void evict(Connection broken) {
+			List<Connection> stale;
+			synchronized(this) {
+				open.remove(broken);
+				ArrayDeque<Connection> idle = available.remove(broken.getAddress());
+				stale = idle == null ? new ArrayList<Connection>() : new ArrayList<Connection>(idle);
+				open.removeAll(stale);
+			}
+			try {
+				broken.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			for(Connection con : stale) {
+				try {
+					con.closeIfIdle();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		/**
+		 * Stops keeping connections
+		 * @return the connections left open, to be closed
+		 */
+		synchronized List<Connection> closeAll() {
+			closed = true;
+			available.clear();
+			List<Connection> connections = new ArrayList<Connection>(open);
+			open.clear();
+			return connections;
+		}
+	}
+}
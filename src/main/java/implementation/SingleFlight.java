@@ -0,0 +1,71 @@
+package implementation;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs work once per key at a time: callers arriving while the work
+ * for their key is in flight wait for it and share its result
+ * instead of running it again.
+ *
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+class SingleFlight<K, V> {
+	
+	/**
+	 * Maps the key to the result of the work in flight
+	 */
+	private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+	
+	/**
+	 * Runs the work, or waits for the one in flight for the same key
+	 * @param key identifies the work
+	 * @param work the work
+	 * @return the result of the work
+	 * @throws Exception thrown by the work
+	 */
+	V execute(K key, Callable<V> work) throws Exception {
+		CompletableFuture<V> mine = new CompletableFuture<V>();
+		CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+		if(running != null) {
+			return await(running);
+		}
+		
+		try {
+			V result = work.call();
+			mine.complete(result);
+			return result;
+		} catch (Exception e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, mine);
+		}
+	}
+	
+	private static <V> V await(CompletableFuture<V> running) throws Exception {
+		boolean interrupted = false;
+		try {
+			while(true) {
+				try {
+					return running.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if(e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package implementation;
+
+/**
+ * A timed hop of a traced call graph. Client spans cover one
+ * remote invocation as seen by the caller, server spans cover
+ * its execution by the remote object.
+ */
+public class Span {
+
+	public static final String CLIENT = "client";
+
+	public static final String SERVER = "server";
+
+	private final long traceId;
+
+	private final long spanId;
+
+	private final long parentSpanId;
+
+	private final String name;
+
+	private final String kind;
+
+	private final long startMillis;
+
+	private final long startNanos;
+
+	private long durationNanos = -1L;
+
+	private String error;
+
+	public Span(long traceId, long spanId, long parentSpanId, String name, String kind) {
+		this.traceId = traceId;
+		this.spanId = spanId;
+		this.parentSpanId = parentSpanId;
+		this.name = name;
+		this.kind = kind;
+		this.startMillis = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Stops the span clock.
+	 */
+	public void finish() {
+		this.durationNanos = System.nanoTime() - startNanos;
+	}
+
+	/**
+	 * Stops the span clock, marking the span as failed.
+	 *
+	 * @param cause the failure
+	 */
+	public void finish(Throwable cause) {
+		this.error = cause.getClass().getName();
+		finish();
+	}
+
+	public long getTraceId() {
+		return traceId;
+	}
+
+	public long getSpanId() {
+		return spanId;
+	}
+
+	/**
+	 * @return the parent span id, 0 for a root span
+	 */
+	public long getParentSpanId() {
+		return parentSpanId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getKind() {
+		return kind;
+	}
+
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	/**
+	 * @return the span duration, or -1 if it was not finished
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * @return the class of the failure, or null if the span succeeded
+	 */
+	public String getError() {
+		return error;
+	}
+
+}
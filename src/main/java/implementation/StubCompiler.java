@@ -0,0 +1,227 @@
+package implementation;
+
+import com.squareup.javapoet.JavaFile;
+import model.InterfaceDescription;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns interface descriptions into loaded classes at runtime: the
+ * sources built by the {@link Generator} are compiled in memory with
+ * the system Java compiler and defined by a class loader of their own,
+ * so interfaces can be added without a build step. The classes are
+ * cached by the hash of their sources and shared by all instances;
+ * describing the same interface again reuses them.
+ * <p>
+ * Requires a JDK, as a JRE has no system compiler.
+ */
+public class StubCompiler {
+
+	/**
+	 * Classes already compiled, by the hash of their sources
+	 */
+	private static final Map<String, CompiledStubs> compiled = new ConcurrentHashMap<String, CompiledStubs>();
+
+	/**
+	 * Compilations in flight, so the same sources are compiled once
+	 */
+	private static final SingleFlight<String, CompiledStubs> compiling = new SingleFlight<String, CompiledStubs>();
+
+	private final Generator generator = new Generator();
+
+	/**
+	 * Gets the classes of an interface description, compiling them
+	 * unless the same interface was compiled before
+	 *
+	 * @param idl the interface description
+	 * @return the interface, client proxy and invoker classes
+	 * @throws IOException if the sources can't be compiled
+	 * @throws IllegalStateException if there is no system Java compiler
+	 */
+	public CompiledStubs compile(InterfaceDescription idl) throws IOException {
+		List<JavaFile> files = generator.files(idl);
+		String hash = hash(files);
+		CompiledStubs stubs = compiled.get(hash);
+		if(stubs != null) {
+			return stubs;
+		}
+		try {
+			return compiling.execute(hash, () -> {
+				CompiledStubs done = compiled.get(hash);
+				if(done == null) {
+					done = load(files);
+					compiled.put(hash, done);
+				}
+				return done;
+			});
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static String hash(List<JavaFile> files) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for(JavaFile file : files) {
+				digest.update(file.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			StringBuilder hex = new StringBuilder(64);
+			for(byte b : digest.digest()) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Compiles the sources and loads the classes
+	 * @param files the interface, client proxy and invoker sources
+	 */
+	private static CompiledStubs load(List<JavaFile> files) throws IOException, ClassNotFoundException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if(compiler == null) {
+			throw new IllegalStateException("no system Java compiler, runtime stubs require a JDK");
+		}
+
+		List<JavaFileObject> sources = new ArrayList<JavaFileObject>(files.size());
+		List<String> names = new ArrayList<String>(files.size());
+		for(JavaFile file : files) {
+			sources.add(file.toJavaFileObject());
+			names.add(file.packageName + "." + file.typeSpec.name);
+		}
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		Map<String, byte[]> classes = new HashMap<String, byte[]>();
+		try(StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+				InMemoryFileManager fileManager = new InMemoryFileManager(standard, classes)) {
+			List<String> options = Arrays.asList("-classpath", classpath(), "-proc:none", "-g:source,lines");
+			if(!compiler.getTask(null, fileManager, diagnostics, options, null, sources).call()) {
+				StringBuilder message = new StringBuilder("could not compile the stubs of ").append(names.get(0));
+				for(Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+					message.append('\n').append(diagnostic);
+				}
+				throw new IOException(message.toString());
+			}
+		}
+
+		StubClassLoader loader = new StubClassLoader(StubCompiler.class.getClassLoader(), classes);
+		return new CompiledStubs(loader.loadClass(names.get(0)), loader.loadClass(names.get(1)),
+				loader.loadClass(names.get(2)));
+	}
+
+	/**
+	 * The classpath of the application plus where the middleware was loaded from,
+	 * which differ when it is embedded in another class loader
+	 */
+	private static String classpath() {
+		String classpath = System.getProperty("java.class.path", "");
+		CodeSource source = StubCompiler.class.getProtectionDomain().getCodeSource();
+		if(source != null && source.getLocation() != null) {
+			try {
+				classpath = new File(source.getLocation().toURI()).getPath() + File.pathSeparator + classpath;
+			} catch (URISyntaxException | IllegalArgumentException e) {
+				// not a file, the application classpath has to do
+			}
+		}
+		return classpath;
+	}
+
+	/**
+	 * Keeps the compiled classes in memory instead of writing class files
+	 */
+	private static final class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+		private final Map<String, byte[]> classes;
+
+		InMemoryFileManager(StandardJavaFileManager fileManager, Map<String, byte[]> classes) {
+			super(fileManager);
+			this.classes = classes;
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className,
+				JavaFileObject.Kind kind, FileObject sibling) {
+			return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+				@Override
+				public OutputStream openOutputStream() {
+					return new ByteArrayOutputStream() {
+						@Override
+						public void close() {
+							classes.put(className, toByteArray());
+						}
+					};
+				}
+			};
+		}
+	}
+
+	/**
+	 * Defines the compiled classes, looking them up before asking the
+	 * parent so they take precedence over classes of the same name
+	 * generated at build time
+	 */
+	private static final class StubClassLoader extends ClassLoader {
+
+		private final Map<String, byte[]> classes;
+
+		StubClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+			super(parent);
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if(!classes.containsKey(name)) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized(getClassLoadingLock(name)) {
+				Class<?> loaded = findLoadedClass(name);
+				if(loaded == null) {
+					loaded = findClass(name);
+				}
+				if(resolve) {
+					resolveClass(loaded);
+				}
+				return loaded;
+			}
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] bytes = classes.get(name);
+			if(bytes == null) {
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package implementation;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel which closes connections left idle past their
+ * death time. Each connection is linked into the slot of its death
+ * time at most once; reusing it only moves its death time forward,
+ * and the wheel moves it to a later slot when the old one comes up.
+ * Scheduling an already scheduled connection is a single volatile read.
+ */
+class TimerWheel {
+
+	/**
+	 * Number of slots, must be a power of two
+	 */
+	private static final int SLOTS = 256;
+
+	/**
+	 * Milliseconds covered by each slot
+	 */
+	private final long tickMillis;
+
+	/**
+	 * Linked lists of the connections expiring in each slot, through
+	 * {@link Connection#nextExpiring}, guarded by this wheel
+	 */
+	private final Connection[] slots = new Connection[SLOTS];
+
+	/**
+	 * Called with the connections closed by the wheel
+	 */
+	private final Consumer<Connection> expired;
+
+	/**
+	 * Next tick to be processed
+	 */
+	private long tick;
+
+	/**
+	 * @param tickMillis resolution of the wheel, in milliseconds
+	 * @param expired called with the connections closed for being idle
+	 */
+	TimerWheel(long tickMillis, Consumer<Connection> expired) {
+		this.tickMillis = Math.max(1L, tickMillis);
+		this.expired = expired;
+		this.tick = System.currentTimeMillis() / this.tickMillis;
+	}
+
+	/**
+	 * Makes the wheel watch the connection until it is closed
+	 * @param con a connection whose death time is set
+	 */
+	void schedule(Connection con) {
+		if(con.expiring) {
+			return;
+		}
+		synchronized(this) {
+			if(!con.expiring) {
+				con.expiring = true;
+				link(con);
+			}
+		}
+	}
+
+	/**
+	 * Links the connection into the slot of its death time, or of the
+	 * next tick if that is already past. Caller must hold the lock
+	 */
+	private void link(Connection con) {
+		long due = Math.max(con.getCurrentDeathTime() / tickMillis, tick);
+		int slot = (int) (due & (SLOTS - 1));
+		con.nextExpiring = slots[slot];
+		slots[slot] = con;
+	}
+
+	/**
+	 * Processes the ticks elapsed until now: closes the idle connections
+	 * that are due and moves the others to the slot of their death time
+	 */
+	void advance() {
+		long now = System.currentTimeMillis();
+		long last = now / tickMillis;
+		while(true) {
+			Connection head;
+			synchronized(this) {
+				if(tick > last) {
+					return;
+				}
+				int slot = (int) (tick & (SLOTS - 1));
+				head = slots[slot];
+				slots[slot] = null;
+				++tick;
+			}
+			while(head != null) {
+				Connection con = head;
+				head = con.nextExpiring;
+				con.nextExpiring = null;
+				expire(con, now);
+			}
+		}
+	}
+
+	private void expire(Connection con, long now) {
+		if(!con.isClosed() && con.getCurrentDeathTime() <= now) {
+			try {
+				if(con.closeIfIdle()) {
+					expired.accept(con);
+				}
+			} catch (IOException e) {
+				expired.accept(con);
+			}
+		}
+		synchronized(this) {
+			if(con.isClosed()) {
+				con.expiring = false;
+			} else {
+				// reused since scheduled, or in use right now
+				if(con.getCurrentDeathTime() <= now) {
+					con.setCurrentDeathTime(now + tickMillis);
+				}
+				link(con);
+			}
+		}
+	}
+
+	/**
+	 * @return the time (in milliseconds) until the next tick
+	 */
+	long untilNextTick() {
+		long next;
+		synchronized(this) {
+			next = tick * tickMillis;
+		}
+		return Math.max(0L, next - System.currentTimeMillis());
+	}
+}
@@ -0,0 +1,115 @@
+package implementation;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Propagates trace identifiers inside the invocation context.
+ *
+ * The client side injects the keys below before the invocation is
+ * marshalled, and the server side extracts them to open a child span.
+ * The span of the call being served is kept per thread, so outgoing
+ * calls made while serving it join the same trace.
+ */
+public final class TraceContext {
+
+	public static final String TRACE_ID = "trace.id";
+
+	public static final String SPAN_ID = "trace.span";
+
+	public static final String PARENT_SPAN_ID = "trace.parent";
+
+	public static final String SENT_AT = "trace.sentAt";
+
+	/**
+	 * Every key written by this class, which {@link Invocation} sizes its context for
+	 */
+	public static final String[] KEYS = { TRACE_ID, SPAN_ID, PARENT_SPAN_ID, SENT_AT };
+
+	private static final ThreadLocal<Span> current = new ThreadLocal<Span>();
+
+	private TraceContext() {
+	}
+
+	/**
+	 * @return the span being served by this thread, or null
+	 */
+	public static Span current() {
+		return current.get();
+	}
+
+	/**
+	 * Opens a client span for an outgoing invocation, child of the span
+	 * being served by this thread if any, and writes it to the context.
+	 *
+	 * @param invocation the outgoing invocation
+	 * @return the new client span
+	 */
+	public static Span inject(Invocation invocation) {
+		Span parent = current.get();
+		long traceId = parent != null ? parent.getTraceId() : newId();
+		long parentId = parent != null ? parent.getSpanId() : 0L;
+
+		Span span = new Span(traceId, newId(), parentId,
+				invocation.getInvocationData().getOperationName(), Span.CLIENT);
+
+		Map<String, Object> context = invocation.getContext();
+		context.put(TRACE_ID, span.getTraceId());
+		context.put(SPAN_ID, span.getSpanId());
+		context.put(PARENT_SPAN_ID, span.getParentSpanId());
+		context.put(SENT_AT, span.getStartMillis());
+		return span;
+	}
+
+	/**
+	 * Opens a server span for a received invocation and makes it the
+	 * current span of this thread. Invocations without trace data
+	 * start a new trace.
+	 *
+	 * @param invocation the received invocation
+	 * @return the new server span, to be closed with {@link #close(Span)}
+	 */
+	public static Span extract(Invocation invocation) {
+		Map<String, Object> context = invocation.getContext();
+		Object traceId = context == null ? null : context.get(TRACE_ID);
+		Object spanId = context == null ? null : context.get(SPAN_ID);
+
+		Span span = new Span(
+				traceId instanceof Long ? (Long) traceId : newId(),
+				newId(),
+				spanId instanceof Long ? (Long) spanId : 0L,
+				invocation.getInvocationData().getOperationName(), Span.SERVER);
+		current.set(span);
+		return span;
+	}
+
+	/**
+	 * Finishes a server span and detaches it from this thread.
+	 *
+	 * @param span the span returned by {@link #extract(Invocation)}
+	 */
+	public static void close(Span span) {
+		span.finish();
+		current.remove();
+	}
+
+	/**
+	 * Finishes a server span with the error the operation raised and detaches it from this thread.
+	 *
+	 * @param span the span returned by {@link #extract(Invocation)}
+	 * @param error the error of the operation
+	 */
+	public static void close(Span span, Throwable error) {
+		span.finish(error);
+		current.remove();
+	}
+
+	private static long newId() {
+		long id;
+		do {
+			id = ThreadLocalRandom.current().nextLong();
+		} while(id == 0L);
+		return id;
+	}
+
+}
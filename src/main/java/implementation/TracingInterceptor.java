@@ -0,0 +1,52 @@
+package implementation;
+
+import interfaces.InvocationInterceptor;
+import interfaces.SpanExporter;
+
+/**
+ * Interceptor which opens a client span for every invocation,
+ * propagates it to the server through the invocation context
+ * and exports it once the reply arrives.
+ */
+public class TracingInterceptor implements InvocationInterceptor {
+
+	private final SpanExporter exporter;
+
+	/**
+	 * Span of the invocation in flight, requests are synchronous
+	 * so both callbacks run on the calling thread
+	 */
+	private final ThreadLocal<Span> inFlight = new ThreadLocal<Span>();
+
+	public TracingInterceptor(SpanExporter exporter) {
+		this.exporter = exporter;
+	}
+
+	@Override
+	public void beforeMarshal(Invocation invocation) {
+		inFlight.set(TraceContext.inject(invocation));
+	}
+
+	@Override
+	public void afterSend(Invocation invocation, Object result) {
+		Span span = inFlight.get();
+		if(span == null) {
+			return;
+		}
+		inFlight.remove();
+		span.finish();
+		exporter.export(span);
+	}
+
+	@Override
+	public void onError(Invocation invocation, Exception error) {
+		Span span = inFlight.get();
+		if(span == null) {
+			return;
+		}
+		inFlight.remove();
+		span.finish(error);
+		exporter.export(span);
+	}
+
+}
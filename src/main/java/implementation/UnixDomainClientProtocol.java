@@ -0,0 +1,228 @@
+package implementation;
+
+import exception.RemoteError;
+import interfaces.ClientProtocolPlugin;
+import model.OperationOptions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.ProtocolException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Protocol for servers running on the same host, which talks to them
+ * through Unix domain sockets instead of TCP loopback. Frames are the
+ * same as the ones of {@link DefaultClientProtocol}.
+ * 
+ * The socket of each server is found by formatting a path pattern with
+ * its port, e.g. "/tmp/idl-%d.sock". Calls are sent on the caller thread
+ * and idle channels are cached per socket path.
+ * 
+ * Unix domain sockets require a Java 16 runtime, on older ones every
+ * call fails with a RemoteError; {@link #isListening(int)} tells whether
+ * a call can be sent this way at all.
+ */
+public class UnixDomainClientProtocol implements ClientProtocolPlugin {
+	
+	/**
+	 * Default socket path pattern
+	 */
+	public static final String DEFAULT_PATH_PATTERN = System.getProperty("java.io.tmpdir") + "/idl-%d.sock";
+	
+	/**
+	 * Pattern formatted with the port to get the socket path
+	 */
+	private final String pathPattern;
+	
+	/**
+	 * Maps the socket path to the available channels
+	 */
+	private final Map<String, Queue<SocketChannel>> cache = new ConcurrentHashMap<String, Queue<SocketChannel>>();
+	
+	/**
+	 * Largest request or reply, in bytes
+	 */
+	private volatile int maxFrameSize = Frames.DEFAULT_MAX_SIZE;
+	
+	/**
+	 * Creates the protocol with the default socket path pattern
+	 */
+	public UnixDomainClientProtocol() {
+		this(DEFAULT_PATH_PATTERN);
+	}
+	
+	/**
+	 * @param pathPattern pattern formatted with the port to get the socket path
+	 */
+	public UnixDomainClientProtocol(String pathPattern) {
+		this.pathPattern = pathPattern;
+	}
+	
+	/**
+	 * @return the pattern formatted with the port to get the socket path, which
+	 * {@link ServerRequestHandlerImpl#setLocalPathPattern(String)} takes too
+	 */
+	public String getPathPattern() {
+		return pathPattern;
+	}
+	
+	/**
+	 * Sets the largest request or reply of the calls, lowered by the limits
+	 * the operations declare. Larger requests fail before being sent; larger
+	 * replies fail as soon as their length is read, closing the channel
+	 * @param maxFrameSize the limit in bytes
+	 */
+	public void setMaxFrameSize(int maxFrameSize) {
+		if(maxFrameSize <= 0) {
+			throw new IllegalArgumentException("maxFrameSize must be positive, got " + maxFrameSize);
+		}
+		this.maxFrameSize = maxFrameSize;
+	}
+	
+	/**
+	 * Checks if a server on this host listens on the Unix domain socket of
+	 * the port by connecting to it, which fails if the socket file is missing,
+	 * was left behind by a server which is gone, or the runtime has no Unix
+	 * domain sockets. The channel is kept for the next call
+	 * @param port the port of the server
+	 * @return true if the calls to the server can be sent through this protocol
+	 */
+	public boolean isListening(int port) {
+		String path = String.format(pathPattern, port);
+		try {
+			cache.computeIfAbsent(path, k -> new ConcurrentLinkedQueue<SocketChannel>()).add(open(path));
+			return true;
+		} catch (RemoteError e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Sends the data through the Unix domain socket of the server
+	 * listening on the given port
+	 */
+	@Override
+	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg) throws RemoteError {
+		return send(host, port, msg, OperationOptions.DEFAULT);
+	}
+	
+	/**
+	 * Sends the data through the Unix domain socket of the server
+	 * listening on the given port, within the frame size limit of the operation
+	 */
+	@Override
+	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg, OperationOptions options) throws RemoteError {
+		int limit = Frames.limit(options, maxFrameSize);
+		try {
+			Frames.checkLength(msg.size(), limit);
+		} catch (ProtocolException e) {
+			throw new RemoteError("request not sent", e);
+		}
+		String path = String.format(pathPattern, port);
+		Queue<SocketChannel> available = cache.computeIfAbsent(path, k -> new ConcurrentLinkedQueue<SocketChannel>());
+		
+		SocketChannel channel = available.poll();
+		if(channel == null) {
+			channel = open(path);
+		}
+		
+		int codec = Frames.codecOf(msg);
+		byte[] byteMsg = msg.toByteArray();
+		ByteBuffer request = ByteBuffer.allocate(8 + byteMsg.length);
+		request.putInt(Frames.HEADER | codec).putInt(byteMsg.length).put(byteMsg).flip();
+		
+		ByteBuffer reply;
+		try {
+			while(request.hasRemaining()) {
+				channel.write(request);
+			}
+			
+			ByteBuffer header = ByteBuffer.allocate(8);
+			readFully(channel, header);
+			Frames.checkReply(header.getInt(0), codec);
+			reply = ByteBuffer.allocate(Frames.checkLength(header.getInt(4), limit));
+			readFully(channel, reply);
+		} catch (IOException e) {
+			try {
+				channel.close();
+			} catch (IOException e1) {
+				e.addSuppressed(e1);
+			}
+			throw new RemoteError(e);
+		}
+		
+		available.add(channel);
+		return new ByteArrayInputStream(reply.array());
+	}
+	
+	/**
+	 * Closes the cached channels
+	 */
+	@Override
+	public void shutdown() throws RemoteError {
+		IOException error = null;
+		for(Queue<SocketChannel> available : cache.values()) {
+			SocketChannel channel;
+			while((channel = available.poll()) != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					error = e;
+				}
+			}
+		}
+		if(error != null) {
+			throw new RemoteError(error);
+		}
+	}
+	
+	private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+	
+	/**
+	 * Connects to a Unix domain socket, using the Java 16 API through reflection
+	 * so the project still builds for older targets
+	 * @param path the socket path
+	 * @return the connected channel
+	 * @throws RemoteError if it can't connect or the runtime lacks Unix domain sockets
+	 */
+	private static SocketChannel open(String path) throws RemoteError {
+		SocketAddress address;
+		SocketChannel channel;
+		try {
+			ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+			Method of = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+			address = (SocketAddress) of.invoke(null, path);
+			channel = (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+		} catch (ReflectiveOperationException | IllegalArgumentException e) {
+			throw new RemoteError("Unix domain sockets are not supported by this runtime", e);
+		}
+		try {
+			channel.connect(address);
+			return channel;
+		} catch (IOException e) {
+			try {
+				channel.close();
+			} catch (IOException e1) {
+				e.addSuppressed(e1);
+			}
+			throw new RemoteError(e);
+		}
+	}
+}
@@ -2,13 +2,22 @@ package implementation;
 
 import exception.RemoteError;
 import interfaces.ClientRequestHandler;
+import interfaces.Decoder;
+import interfaces.InvocationInterceptor;
 import interfaces.Marshaller;
 import interfaces.Requestor;
 import model.AbsoluteObjectReference;
+import model.OperationOptions;
+import model.PriorityClass;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Unsynchronized requestor to be used for
@@ -20,33 +29,334 @@ import java.io.IOException;
  */
 public class UnsyncRequestor implements Requestor {
 
-    private Marshaller marshaller;
+    /**
+     * Codec of the calls which name none, with the marshaller given
+     * to the requestor and the default codec tag of the server
+     */
+    private final Codec defaultCodec;
+
+    /**
+     * Codecs of the operations which name one, by codec name
+     */
+    private final Map<String, Codec> codecs = new HashMap<String, Codec>();
 
     private ClientRequestHandler clientRequestHandler;
 
+    private static final InvocationInterceptor[] NO_INTERCEPTORS = new InvocationInterceptor[0];
+
+    /**
+     * Flat copy of the interceptor chain, empty when there are none
+     */
+    private final InvocationInterceptor[] interceptors;
+
+    /**
+     * Options of the operations which declare any
+     */
+    private final Map<String, OperationOptions> operations;
+
+    private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+
+    /**
+     * Class of all the calls, overriding the one of their operations when set
+     */
+    private PriorityClass priority;
+
+    /**
+     * Codec of all the calls, overriding the one of their operations when set
+     */
+    private String codec;
+
+    /**
+     * Codecs set for some operations, overriding all the others
+     */
+    private final Map<String, String> operationCodecs = new HashMap<String, String>();
+
     public UnsyncRequestor() {
-    	this.marshaller = new JavaMarshaller();
-    	this.clientRequestHandler = ClientRequestHandlerImpl.getInstance();
+    	this(new JavaMarshaller());
+    }
+
+    /**
+     * @param operations the options of each operation, by name
+     */
+    public UnsyncRequestor(Map<String, OperationOptions> operations) {
+    	this(ClientRequestHandlerImpl.getInstance(), operations);
+    }
+
+    /**
+     * @param clientRequestHandler the handler used to send the requests
+     */
+    public UnsyncRequestor(ClientRequestHandler clientRequestHandler) {
+    	this(clientRequestHandler, Collections.<String, OperationOptions>emptyMap());
+    }
+
+    /**
+     * @param clientRequestHandler the handler used to send the requests
+     * @param operations the options of each operation, by name
+     */
+    public UnsyncRequestor(ClientRequestHandler clientRequestHandler, Map<String, OperationOptions> operations) {
+    	this(new JavaMarshaller(), clientRequestHandler, operations, Collections.<InvocationInterceptor>emptyList());
     }
 
     public UnsyncRequestor(Marshaller marshaller) {
-    	this.marshaller = marshaller;
-		this.clientRequestHandler = ClientRequestHandlerImpl.getInstance();
+    	this(marshaller, NO_INTERCEPTORS);
+	}
+
+    /**
+     * @param marshaller the marshaller to be used
+     * @param interceptors interceptors called around every request, in order
+     */
+    public UnsyncRequestor(Marshaller marshaller, InvocationInterceptor... interceptors) {
+    	this(marshaller, Arrays.asList(interceptors));
+	}
+
+    /**
+     * @param marshaller the marshaller to be used
+     * @param interceptors interceptors called around every request, in order
+     */
+    public UnsyncRequestor(Marshaller marshaller, List<InvocationInterceptor> interceptors) {
+    	this(marshaller, Collections.<String, OperationOptions>emptyMap(), interceptors);
+	}
+
+    /**
+     * @param marshaller the marshaller to be used
+     * @param operations the options of each operation, by name
+     * @param interceptors interceptors called around every request, in order
+     */
+    public UnsyncRequestor(Marshaller marshaller, Map<String, OperationOptions> operations, List<InvocationInterceptor> interceptors) {
+    	this(marshaller, ClientRequestHandlerImpl.getInstance(), operations, interceptors);
+	}
+
+    /**
+     * @param marshaller the marshaller to be used
+     * @param clientRequestHandler the handler used to send the requests
+     * @param operations the options of each operation, by name
+     * @param interceptors interceptors called around every request, in order
+     */
+    public UnsyncRequestor(Marshaller marshaller, ClientRequestHandler clientRequestHandler,
+    		Map<String, OperationOptions> operations, List<InvocationInterceptor> interceptors) {
+    	this.defaultCodec = new Codec(MarshallerRegistry.DEFAULT, marshaller);
+		this.operations = operations.isEmpty()
+				? Collections.<String, OperationOptions>emptyMap() : new HashMap<String, OperationOptions>(operations);
+		this.clientRequestHandler = clientRequestHandler;
+		this.interceptors = interceptors.isEmpty()
+				? NO_INTERCEPTORS : interceptors.toArray(new InvocationInterceptor[interceptors.size()]);
+		for (InvocationInterceptor interceptor : this.interceptors) {
+			if (interceptor == null) {
+				throw new IllegalArgumentException("interceptors cannot be null");
+			}
+		}
 	}
 
 	public Object request(AbsoluteObjectReference aor, String operationName, Object... parameters) throws RemoteError, IOException, ClassNotFoundException {
+		Codec codec = codecOf(operationName);
+		return request(aor, operationName, codec, codec.objectDecoder, parameters);
+	}
+
+	public <T> T request(AbsoluteObjectReference aor, String operationName, Class<T> returnType, Object... parameters) throws RemoteError, IOException, ClassNotFoundException {
+		Codec codec = codecOf(operationName);
+		return request(aor, operationName, codec, codec.marshaller.decoderFor(returnType), parameters);
+	}
+
+	private <T> T request(AbsoluteObjectReference aor, String operationName, Codec codec, Decoder<T> decoder, Object[] parameters) throws RemoteError, IOException, ClassNotFoundException {
 
 		InvocationData invocationData = new InvocationData(aor, operationName, parameters);
 
 		Invocation invocation = new Invocation(invocationData);
 
-		ByteArrayOutputStream outputStream = this.marshaller.marshal(invocation);
+		if (interceptors.length == 0) {
+			return invoke(invocation, codec, decoder);
+		}
+
+		return invokeIntercepted(invocation, codec, decoder);
+	}
+
+	/**
+	 * @param retryPolicy the policy used to retry idempotent operations
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * @param priority the class all the calls are scheduled in, overriding
+	 * the one declared by their operations; null to keep those
+	 */
+	public void setPriority(PriorityClass priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * @param codec the name of the codec all the calls are marshalled with,
+	 * overriding the ones declared by their operations; null to keep those
+	 * @throws IllegalArgumentException if no codec is registered with that name
+	 */
+	public void setCodec(String codec) {
+		if (codec != null) {
+			MarshallerRegistry.tagOf(codec);
+		}
+		this.codec = codec;
+	}
+
+	/**
+	 * Moves the calls of an operation to another codec, e.g. a hot
+	 * operation to the compact one, leaving the others as they are
+	 * @param operationName the name of the operation
+	 * @param codec the name of the codec, null for the one used before it was set
+	 * @throws IllegalArgumentException if no codec is registered with that name
+	 */
+	public void setCodec(String operationName, String codec) {
+		if (codec == null) {
+			operationCodecs.remove(operationName);
+		} else {
+			MarshallerRegistry.tagOf(codec);
+			operationCodecs.put(operationName, codec);
+		}
+	}
+
+	/**
+	 * Marshals the invocation, sends it and decodes the reply
+	 */
+	private <T> T invoke(Invocation invocation, Codec codec, Decoder<T> decoder) throws RemoteError, IOException, ClassNotFoundException {
+
+		AbsoluteObjectReference aor = invocation.getInvocationData().getAor();
+
+		OperationOptions options = optionsOf(invocation.getInvocationData().getOperationName());
+
+		ByteArrayOutputStream outputStream = marshal(invocation, codec);
+
+		ByteArrayInputStream inputStream = options.isIdempotent()
+				? sendWithRetries(aor, outputStream, options)
+				: this.clientRequestHandler.send(aor.getHost(), aor.getPort(), outputStream, options);
+
+		return decoder.decode(inputStream);
+	}
+
+	/**
+	 * Marshals the invocation with its reference apart, so protocols can
+	 * send the reference once per connection and a handle afterwards
+	 */
+	private ByteArrayOutputStream marshal(Invocation invocation, Codec codec) throws IOException {
+		InvocationData data = invocation.getInvocationData();
+		if (data.getAor() == null) {
+			return codec.marshaller.marshal(invocation);
+		}
+		InvocationMessage message = new InvocationMessage(codec.referenceTo(data.getAor()), codec.tag);
+		codec.marshaller.marshal(new Invocation(new InvocationData(null, data.getOperationName(), data.getActualParams()),
+				invocation.getContext()), message);
+		return message;
+	}
+
+	/**
+	 * Gets the codec of an operation: the one set for it, else the one set
+	 * for all the calls, else the one it declares, else the marshaller
+	 */
+	private Codec codecOf(String operationName) {
+		String name = operationCodecs.isEmpty() ? null : operationCodecs.get(operationName);
+		if (name == null) {
+			name = this.codec;
+		}
+		if (name == null) {
+			OperationOptions options = operations.get(operationName);
+			name = options == null ? null : options.getCodec();
+		}
+		if (name == null) {
+			return this.defaultCodec;
+		}
+		Codec codec = codecs.get(name);
+		if (codec == null) {
+			codec = new Codec(MarshallerRegistry.tagOf(name), MarshallerRegistry.forName(name));
+			codecs.put(name, codec);
+		}
+		return codec;
+	}
+
+	/**
+	 * Sends an invocation of an idempotent operation, sending it again
+	 * after transport failures as allowed by the retry policy
+	 */
+	private ByteArrayInputStream sendWithRetries(AbsoluteObjectReference aor, ByteArrayOutputStream outputStream, OperationOptions options) throws RemoteError {
+		RetryPolicy policy = this.retryPolicy;
+		for (int attempt = 1; ; ++attempt) {
+			try {
+				return this.clientRequestHandler.send(aor.getHost(), aor.getPort(), outputStream, options);
+			} catch (RemoteError e) {
+				if (attempt >= policy.getMaxAttempts() || !policy.isRetryable(e)) {
+					throw e;
+				}
+			}
+			policy.backoff(attempt);
+		}
+	}
+
+	private OperationOptions optionsOf(String operationName) {
+		OperationOptions options = operations.get(operationName);
+		if (options == null) {
+			options = OperationOptions.DEFAULT;
+		}
+		return priority == null ? options : options.withPriority(priority);
+	}
+
+	/**
+	 * Same as invoke, running the interceptor chain around it
+	 */
+	private <T> T invokeIntercepted(Invocation invocation, Codec codec, Decoder<T> decoder) throws RemoteError, IOException, ClassNotFoundException {
+		T returnValue;
+		try {
+			for (InvocationInterceptor interceptor : interceptors) {
+				interceptor.beforeMarshal(invocation);
+			}
 
-		ByteArrayInputStream inputStream = this.clientRequestHandler.send(aor.getHost(), aor.getPort(), outputStream);
+			returnValue = invoke(invocation, codec, decoder);
+		} catch (RemoteError | IOException | ClassNotFoundException | RuntimeException e) {
+			for (InvocationInterceptor interceptor : interceptors) {
+				interceptor.onError(invocation, e);
+			}
+			throw e;
+		}
 
-		Object returnValue = this.marshaller.unmarshal(inputStream, Object.class);
+		for (InvocationInterceptor interceptor : interceptors) {
+			interceptor.afterSend(invocation, returnValue);
+		}
 
 		return returnValue;
 	}
 
+	/**
+	 * A marshaller with its tag, and what is kept of its last call
+	 */
+	private static final class Codec {
+
+		final int tag;
+
+		final Marshaller marshaller;
+
+		/**
+		 * Decoder of untyped replies
+		 */
+		final Decoder<Object> objectDecoder;
+
+		/**
+		 * The reference last sent, marshalled; stubs always send the same one
+		 */
+		private InvocationMessage.Reference lastReference;
+
+		Codec(int tag, Marshaller marshaller) {
+			this.tag = tag;
+			this.marshaller = marshaller;
+			this.objectDecoder = marshaller.decoderFor(Object.class);
+		}
+
+		/**
+		 * Gets the marshalled reference, marshalling it only when it changes
+		 */
+		InvocationMessage.Reference referenceTo(AbsoluteObjectReference aor) throws IOException {
+			InvocationMessage.Reference reference = this.lastReference;
+			if (reference == null || reference.getAor() != aor) {
+				reference = new InvocationMessage.Reference(aor, this.marshaller.marshal(aor).toByteArray());
+				this.lastReference = reference;
+			}
+			return reference;
+		}
+	}
+
 }
@@ -0,0 +1,457 @@
+package implementation;
+
+import model.PriorityClass;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queue of the calls waiting for a thread of {@link DefaultClientProtocol},
+ * one FIFO per priority class served by weighted fair queuing: every call
+ * is stamped with the virtual time it would finish at if its class got
+ * exactly its share of the threads (its cost over the weight of the
+ * class, after the previous call of the class), and the call stamped
+ * earliest is taken first. A class sending nothing leaves its share to
+ * the others, and a class flooding the queue only delays itself.
+ * <p>
+ * Classes may also reserve threads: a thread only takes a call of a class
+ * if enough threads are left for the reservations of the others. As the
+ * executor hands calls to the threads it starts without queuing them,
+ * reservations hold once all its threads are started.
+ */
+final class WeightedFairQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+	/**
+	 * A call scheduled by its class and cost; other tasks count as
+	 * normal calls of cost 1 and are never held back by reservations
+	 */
+	interface Task extends Runnable {
+
+		PriorityClass getPriority();
+
+		/**
+		 * @return the relative cost of the call, e.g. the size of its message
+		 */
+		long getCost();
+	}
+
+	private static final PriorityClass[] CLASSES = PriorityClass.values();
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	private final int capacity;
+
+	/**
+	 * Threads available to the calls
+	 */
+	private final int threads;
+
+	private final List<ArrayDeque<Entry>> queues = new ArrayList<ArrayDeque<Entry>>(CLASSES.length);
+	private final int[] weights = new int[CLASSES.length];
+	private final int[] reserved = new int[CLASSES.length];
+
+	/**
+	 * Calls of each class taken by a thread and not finished yet
+	 */
+	private final int[] running = new int[CLASSES.length];
+	private int totalRunning;
+	private int totalReserved;
+
+	/**
+	 * Finish stamp of the last call queued in each class
+	 */
+	private final double[] lastFinish = new double[CLASSES.length];
+
+	/**
+	 * Finish stamp of the last call taken
+	 */
+	private double virtualTime;
+
+	private int count;
+
+	/**
+	 * @param capacity maximum number of calls waiting
+	 * @param threads threads of the executor available to the calls
+	 */
+	WeightedFairQueue(int capacity, int threads) {
+		this.capacity = capacity;
+		this.threads = threads;
+		for(PriorityClass priority : CLASSES) {
+			queues.add(new ArrayDeque<Entry>());
+			weights[priority.ordinal()] = priority.getDefaultWeight();
+		}
+	}
+
+	/**
+	 * Sets the share of the threads given to a class when others are waiting too
+	 * @param priority the class
+	 * @param weight the weight of the class, relative to the others
+	 */
+	void setWeight(PriorityClass priority, int weight) {
+		if(weight <= 0) {
+			throw new IllegalArgumentException("weight must be positive, got " + weight);
+		}
+		lock.lock();
+		try {
+			weights[priority.ordinal()] = weight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Keeps threads free for the calls of a class
+	 * @param priority the class
+	 * @param reservedThreads the number of threads, 0 to reserve none
+	 */
+	void reserve(PriorityClass priority, int reservedThreads) {
+		if(reservedThreads < 0) {
+			throw new IllegalArgumentException("reserved threads cannot be negative, got " + reservedThreads);
+		}
+		lock.lock();
+		try {
+			int total = totalReserved - reserved[priority.ordinal()] + reservedThreads;
+			if(total > threads) {
+				throw new IllegalArgumentException("cannot reserve " + total + " of " + threads + " threads");
+			}
+			reserved[priority.ordinal()] = reservedThreads;
+			totalReserved = total;
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param priority a class
+	 * @return the number of calls of the class waiting
+	 */
+	int size(PriorityClass priority) {
+		lock.lock();
+		try {
+			return queues.get(priority.ordinal()).size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		lock.lock();
+		try {
+			return capacity - count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(Runnable task) {
+		if(task == null) {
+			throw new NullPointerException();
+		}
+		lock.lock();
+		try {
+			if(count == capacity) {
+				return false;
+			}
+			enqueue(task);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+		if(task == null) {
+			throw new NullPointerException();
+		}
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while(count == capacity) {
+				if(nanos <= 0L) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			enqueue(task);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void put(Runnable task) throws InterruptedException {
+		if(task == null) {
+			throw new NullPointerException();
+		}
+		lock.lockInterruptibly();
+		try {
+			while(count == capacity) {
+				notFull.await();
+			}
+			enqueue(task);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			Runnable task;
+			while((task = dequeue()) == null) {
+				notEmpty.await();
+			}
+			return task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			Runnable task;
+			while((task = dequeue()) == null) {
+				if(nanos <= 0L) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll() {
+		lock.lock();
+		try {
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable peek() {
+		lock.lock();
+		try {
+			Entry next = earliest(false);
+			return next == null ? null : next.task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(Object task) {
+		lock.lock();
+		try {
+			for(ArrayDeque<Entry> queue : queues) {
+				for(Iterator<Entry> it = queue.iterator(); it.hasNext(); ) {
+					if(it.next().task == task) {
+						it.remove();
+						--count;
+						notFull.signal();
+						return true;
+					}
+				}
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c, int maxElements) {
+		lock.lock();
+		try {
+			int drained = 0;
+			Entry next;
+			while(drained < maxElements && (next = earliest(false)) != null) {
+				queues.get(next.priority).poll();
+				--count;
+				c.add(next.task);
+				++drained;
+			}
+			if(drained > 0) {
+				notFull.signalAll();
+			}
+			return drained;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Iterates over a snapshot of the waiting calls; removing through it removes from the queue
+	 */
+	@Override
+	public Iterator<Runnable> iterator() {
+		List<Runnable> snapshot = new ArrayList<Runnable>();
+		lock.lock();
+		try {
+			for(ArrayDeque<Entry> queue : queues) {
+				for(Entry entry : queue) {
+					snapshot.add(entry.task);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		Iterator<Runnable> it = snapshot.iterator();
+		return new Iterator<Runnable>() {
+			private Runnable last;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public Runnable next() {
+				return last = it.next();
+			}
+
+			@Override
+			public void remove() {
+				it.remove();
+				WeightedFairQueue.this.remove(last);
+			}
+		};
+	}
+
+	private void enqueue(Runnable task) {
+		int priority = PriorityClass.NORMAL.ordinal();
+		long cost = 1L;
+		if(task instanceof Task) {
+			priority = ((Task) task).getPriority().ordinal();
+			cost = Math.max(1L, ((Task) task).getCost());
+		}
+		double finish = Math.max(virtualTime, lastFinish[priority]) + (double) cost / weights[priority];
+		lastFinish[priority] = finish;
+		queues.get(priority).add(new Entry(task, priority, finish));
+		++count;
+		notEmpty.signal();
+	}
+
+	/**
+	 * Takes the earliest call a thread may run now
+	 * @return the call, wrapped to account for it until it finishes, or null if there is none
+	 */
+	private Runnable dequeue() {
+		Entry next = earliest(totalReserved > 0);
+		if(next == null) {
+			return null;
+		}
+		queues.get(next.priority).poll();
+		--count;
+		virtualTime = Math.max(virtualTime, next.finish);
+		notFull.signal();
+		if(!(next.task instanceof Task)) {
+			return next.task;
+		}
+		int priority = next.priority;
+		++running[priority];
+		++totalRunning;
+		Runnable task = next.task;
+		return () -> {
+			try {
+				task.run();
+			} finally {
+				finished(priority);
+			}
+		};
+	}
+
+	private void finished(int priority) {
+		lock.lock();
+		try {
+			--running[priority];
+			--totalRunning;
+			if(totalReserved > 0) {
+				// a reservation may no longer hold back the calls waiting
+				notEmpty.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Finds the call stamped earliest among the heads of the classes
+	 * @param reserving whether to skip the classes a thread can't take calls of
+	 */
+	private Entry earliest(boolean reserving) {
+		Entry earliest = null;
+		for(ArrayDeque<Entry> queue : queues) {
+			Entry head = queue.peek();
+			if(head != null && (earliest == null || head.finish < earliest.finish)
+					&& (!reserving || !(head.task instanceof Task) || mayRun(head.priority))) {
+				earliest = head;
+			}
+		}
+		return earliest;
+	}
+
+	/**
+	 * Checks whether a thread taking a call of the class leaves
+	 * enough threads for the reservations of the other classes
+	 */
+	private boolean mayRun(int priority) {
+		int needed = 0;
+		for(int other = 0; other < CLASSES.length; ++other) {
+			if(other != priority) {
+				needed += Math.max(0, reserved[other] - running[other]);
+			}
+		}
+		return threads - totalRunning - 1 >= needed;
+	}
+
+	private static final class Entry {
+		final Runnable task;
+		final int priority;
+		final double finish;
+
+		Entry(Runnable task, int priority, double finish) {
+			this.task = task;
+			this.priority = priority;
+			this.finish = finish;
+		}
+	}
+}
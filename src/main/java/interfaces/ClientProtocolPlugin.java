@@ -1,6 +1,7 @@
 package interfaces;
 
 import exception.RemoteError;
+import model.OperationOptions;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -25,6 +26,20 @@ public interface ClientProtocolPlugin {
 	 */
 	public ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg) throws RemoteError;
 	
+	/**
+	 * Same as {@link #send(String, int, ByteArrayOutputStream)}, for invocations of an
+	 * operation with the given options. Plug-ins which don't use the options may ignore them
+	 * 
+	 * @param host the hostname to send the data
+	 * @param port the port to be used
+	 * @param msg the data to be sent
+	 * @param options the options of the invoked operation
+	 * @return the server reply
+	 */
+	public default ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg, OperationOptions options) throws RemoteError {
+		return send(host, port, msg);
+	}
+	
 	/**
 	 * Shutdown the plug-in. Called when Client Request Handler changes the protocol plug-in
 	 * @throws RemoteError if any error occurs
@@ -1,6 +1,7 @@
 package interfaces;
 
 import exception.RemoteError;
+import model.OperationOptions;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -23,6 +24,21 @@ public interface ClientRequestHandler {
 	 */
 	ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg) throws RemoteError;
 
+	/**
+	 * Function used by the requestor to send the data of an
+	 * operation with the given options, using the specific protocol.
+	 * Handlers which don't use the options may ignore them
+	 *  
+	 * @param host the hostname to send the data
+	 * @param port the port to be used
+	 * @param msg the data to be sent
+	 * @param options the options of the invoked operation
+	 * @return the server reply
+	 */
+	default ByteArrayInputStream send(String host, int port, ByteArrayOutputStream msg, OperationOptions options) throws RemoteError {
+		return send(host, port, msg);
+	}
+
 	/**
 	 * @return the protocol
 	 */
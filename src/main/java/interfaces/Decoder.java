@@ -0,0 +1,31 @@
+package interfaces;
+
+import exception.RemoteError;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Represents a Decoder, which reads a reply marshalled by a
+ * specific Marshaller straight into the expected type.
+ * Decoders are obtained from {@link Marshaller#decoderFor(Class)},
+ * one per marshaller and type; the Generator doesn't emit any.
+ * 
+ * Replies of primitive types are decoded boxed, as the generated
+ * interfaces return the boxed types, and every reply is a new
+ * instance: there is no path without boxing and no decoding into
+ * an instance the caller supplies.
+ *
+ * @param <T> the decoded type
+ */
+public interface Decoder<T> {
+
+	/**
+	 * Reads a reply.
+	 *
+	 * @param inputStream	marshalled reply as byte stream
+	 * @return	the decoded reply
+	 * @throws RemoteError if the reply is an error raised by the remote object
+	 */
+	public T decode(ByteArrayInputStream inputStream) throws RemoteError, IOException, ClassNotFoundException;
+}
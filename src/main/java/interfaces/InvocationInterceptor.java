@@ -0,0 +1,45 @@
+package interfaces;
+
+import exception.RemoteError;
+import implementation.Invocation;
+
+/**
+ * Represents an interceptor, which is called by the Requestor
+ * around every remote invocation and may read or enrich
+ * the invocation context.
+ *
+ * Interceptors are fixed when the Requestor is created, so
+ * a Requestor without interceptors pays nothing for them.
+ */
+public interface InvocationInterceptor {
+
+	/**
+	 * Called before the invocation is marshalled,
+	 * so changes to the context are sent to the server.
+	 *
+	 * @param invocation the invocation about to be sent
+	 * @throws RemoteError to abort the invocation
+	 */
+	void beforeMarshal(Invocation invocation) throws RemoteError;
+
+	/**
+	 * Called after the server reply was received and unmarshalled.
+	 *
+	 * @param invocation the invocation that was sent
+	 * @param result the unmarshalled reply
+	 */
+	default void afterSend(Invocation invocation, Object result) {
+	}
+
+	/**
+	 * Called when marshalling, sending or unmarshalling failed, or when
+	 * an interceptor aborted the invocation. The error is rethrown to
+	 * the caller after every interceptor was notified.
+	 *
+	 * @param invocation the failed invocation
+	 * @param error the failure
+	 */
+	default void onError(Invocation invocation, Exception error) {
+	}
+
+}
@@ -0,0 +1,71 @@
+package interfaces;
+
+import exception.RemoteError;
+import implementation.Invocation;
+import model.ExecutionStrategy;
+
+import java.io.IOException;
+
+/**
+ * Represents an Invoker, which receives the invocations
+ * addressed to a remote object and executes them on it.
+ * Invokers are generated from the interface description.
+ */
+public interface Invoker {
+
+	/**
+	 * Executes the invoked operation on the remote object
+	 *
+	 * @param invocation the received invocation
+	 * @return the return of the invoked operation
+	 * @throws RemoteError if the operation is unknown or fails
+	 */
+	Object invoke(Invocation invocation) throws RemoteError, IOException, ClassNotFoundException;
+
+	/**
+	 * Concurrent invocations of coalesced operations with the same
+	 * arguments are executed once, and all callers get that result.
+	 * Only operations without side effects may be coalesced.
+	 *
+	 * @param operationName the operation name
+	 * @return true if the operation is coalesced
+	 */
+	default boolean isCoalesced(String operationName) {
+		return false;
+	}
+
+	/**
+	 * Gets where the server runs the invocations of an operation, as
+	 * declared in the interface description
+	 *
+	 * @param operationName the operation name
+	 * @return the execution strategy of the operation
+	 */
+	default ExecutionStrategy getExecution(String operationName) {
+		return ExecutionStrategy.INLINE;
+	}
+
+	/**
+	 * Gets an argument of an invocation, tolerating clients built
+	 * from an older interface description which do not send it
+	 *
+	 * @param params the arguments of the invocation
+	 * @param index the position of the argument
+	 * @param type the type of the argument
+	 * @param absent the value used when the argument was not sent
+	 * @return the argument, or absent
+	 * @throws RemoteError if the argument sent has another type
+	 */
+	static <T> T argument(Object[] params, int index, Class<T> type, T absent) throws RemoteError {
+		Object argument = index < params.length ? params[index] : null;
+		if (argument == null) {
+			return absent;
+		}
+		if (!type.isInstance(argument)) {
+			throw new RemoteError("Argument " + index + " should be " + type.getSimpleName()
+					+ " but is " + argument.getClass().getSimpleName());
+		}
+		return type.cast(argument);
+	}
+
+}
@@ -3,6 +3,7 @@ package interfaces;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Represents a Marshaller, which is used for
@@ -22,6 +23,18 @@ public interface Marshaller {
 	 */
 	public ByteArrayOutputStream marshal(Object object) throws IOException;
 	
+	/**
+	 * Appends the byte stream that represents object to a stream.
+	 * Implementations should write it directly, without
+	 * an intermediate buffer.
+	 * 
+	 * @param object 	the object to be marshalled
+	 * @param out	the stream written to
+	 */
+	public default void marshal(Object object, OutputStream out) throws IOException {
+		marshal(object).writeTo(out);
+	}
+	
 	/**
 	 * Interprets byte stream generated by an instance
 	 * of the same Marshaller implementation into its
@@ -30,6 +43,19 @@ public interface Marshaller {
 	 * @param inputStream	marshalled object as byte stream
 	 * @param tgtClass	class of object to be unmarshalled
 	 * @return 	object represented by inputStream
+	 * @throws ClassCastException if the object is not a tgtClass
+	 */
+	public <T> T unmarshal(ByteArrayInputStream inputStream, Class<T> tgtClass) throws IOException, ClassNotFoundException;
+	
+	/**
+	 * Gets a decoder which reads replies of the given type, as
+	 * marshalled by this Marshaller. Implementations should
+	 * return specialized decoders for the types they know.
+	 * 
+	 * @param tgtClass	class of the replies
+	 * @return	decoder of replies of tgtClass
 	 */
-	public <T> Object unmarshal(ByteArrayInputStream inputStream, Class<T> tgtClass) throws IOException, ClassNotFoundException;
+	public default <T> Decoder<T> decoderFor(Class<T> tgtClass) {
+		return inputStream -> unmarshal(inputStream, tgtClass);
+	}
 }
@@ -23,4 +23,12 @@ public interface Requestor {
 	 */
 	Object request(AbsoluteObjectReference aor, String operationName, Object ... parameters) throws RemoteError, IOException, ClassNotFoundException;
 	
+	/**
+	 * Same as {@link #request(AbsoluteObjectReference, String, Object...)},
+	 * decoding the reply straight into the return type of the operation.
+	 * 
+	 * @return the return of the invoked operation
+	 */
+	<T> T request(AbsoluteObjectReference aor, String operationName, Class<T> returnType, Object ... parameters) throws RemoteError, IOException, ClassNotFoundException;
+	
 }
@@ -0,0 +1,39 @@
+package interfaces;
+
+import exception.RemoteError;
+
+/**
+ * Represents the Server Request Handler, which receives requests
+ * from the network, hands them to the invoker of the addressed
+ * remote object and sends the replies back.
+ */
+public interface ServerRequestHandler {
+
+	/**
+	 * Registers the invoker of remote objects with the given invoker id
+	 *
+	 * @param invokerId the invoker id found in the object references
+	 * @param invoker the invoker
+	 */
+	void register(int invokerId, Invoker invoker);
+
+	/**
+	 * Starts accepting requests
+	 *
+	 * @throws RemoteError if it can't listen
+	 */
+	void start() throws RemoteError;
+
+	/**
+	 * @return the port it listens to
+	 */
+	int getPort();
+
+	/**
+	 * Stops accepting requests and closes the connections
+	 *
+	 * @throws RemoteError if any error occurs
+	 */
+	void shutdown() throws RemoteError;
+
+}
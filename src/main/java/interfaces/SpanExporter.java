@@ -0,0 +1,19 @@
+package interfaces;
+
+import implementation.Span;
+
+/**
+ * Receives finished spans, e.g. to write them to a log
+ * or to forward them to a tracing backend.
+ */
+public interface SpanExporter {
+
+	/**
+	 * Exports a finished span. Called by the thread which finished it,
+	 * so implementations must be thread safe.
+	 *
+	 * @param span the finished span
+	 */
+	void export(Span span);
+
+}
@@ -0,0 +1,198 @@
+package loadtest;
+
+import implementation.Connection;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Measures checking connections out of the cache of an address and back
+ * in, from many threads at once and without any I/O, so only the cost
+ * of the contention is left: the CAS states of {@link Connection} and
+ * the queue found with computeIfAbsent, against the synchronized
+ * use/finish and synchronized queue creation they replaced.
+ * <pre>
+ * java loadtest.CheckoutBenchmark [seconds per run] [connections] [threads...]
+ * </pre>
+ */
+public class CheckoutBenchmark {
+
+    private static final String ADDRESS = "loopback";
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 2L;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int[] threads = { 1, 8, 64, 256 };
+        if (args.length > 2) {
+            threads = new int[args.length - 2];
+            for (int i = 2; i < args.length; ++i) {
+                threads[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+
+        List<Socket> accepted = new ArrayList<Socket>();
+        List<Connection> pool = new ArrayList<Connection>();
+        try (ServerSocket server = new ServerSocket(0, connections, InetAddress.getLoopbackAddress())) {
+            List<Locked> lockedPool = new ArrayList<Locked>();
+            for (int i = 0; i < connections; ++i) {
+                pool.add(new Connection(server.getInetAddress().getHostAddress(), server.getLocalPort()));
+                accepted.add(server.accept());
+                lockedPool.add(new Locked());
+            }
+
+            System.out.printf("%d connections, %ds per run%n", connections, seconds);
+            System.out.printf("  %8s %20s %20s%n", "threads", "cas ops/s", "synchronized ops/s");
+            for (int count : threads) {
+                double cas = run(count, seconds, new CasCache(pool));
+                double locked = run(count, seconds, new LockedCache(lockedPool));
+                System.out.printf("  %8d %20.0f %20.0f%n", count, cas, locked);
+            }
+        } finally {
+            for (Connection con : pool) {
+                con.close();
+            }
+            for (Socket socket : accepted) {
+                socket.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Runs threads checking connections out and in until the time is up
+     * @return the checkouts per second
+     */
+    private static double run(int threads, long seconds, Cache cache) throws InterruptedException {
+        AtomicLong checkouts = new AtomicLong();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Thread(() -> {
+                long done = 0L;
+                while ((done & 0xFF) != 0 || System.nanoTime() < end) {
+                    if (cache.checkoutAndReturn()) {
+                        ++done;
+                    } else {
+                        Thread.yield();
+                    }
+                }
+                checkouts.addAndGet(done);
+            }, "checkout-" + t);
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return checkouts.get() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private interface Cache {
+
+        /**
+         * Checks a connection out and back in
+         * @return false if none was available
+         */
+        boolean checkoutAndReturn();
+    }
+
+    /**
+     * As {@code DefaultClientProtocol} does now
+     */
+    private static final class CasCache implements Cache {
+
+        private final Map<String, Queue<Connection>> cache = new ConcurrentHashMap<String, Queue<Connection>>();
+
+        private final Function<String, Queue<Connection>> newQueue = k -> new ConcurrentLinkedQueue<Connection>();
+
+        CasCache(List<Connection> pool) {
+            cache.computeIfAbsent(ADDRESS, newQueue).addAll(pool);
+        }
+
+        @Override
+        public boolean checkoutAndReturn() {
+            Queue<Connection> available = cache.computeIfAbsent(ADDRESS, newQueue);
+            Connection con;
+            while ((con = available.poll()) != null) {
+                if (con.use()) {
+                    con.finish();
+                    available.add(con);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * As the protocol did before, with monitors on the connections and the queue creation
+     */
+    private static final class LockedCache implements Cache {
+
+        private final Map<String, Queue<Locked>> cache = new ConcurrentHashMap<String, Queue<Locked>>();
+
+        LockedCache(List<Locked> pool) {
+            put(ADDRESS);
+            cache.get(ADDRESS).addAll(pool);
+        }
+
+        private synchronized void put(String key) {
+            if (cache.get(key) == null) {
+                cache.put(key, new ConcurrentLinkedQueue<Locked>());
+            }
+        }
+
+        @Override
+        public boolean checkoutAndReturn() {
+            Locked con = null;
+            while (cache.get(ADDRESS) != null && (con = cache.get(ADDRESS).poll()) != null) {
+                if (con.use()) {
+                    break;
+                }
+                con = null;
+            }
+            if (con == null) {
+                return false;
+            }
+            if (cache.get(ADDRESS) == null) {
+                put(ADDRESS);
+            }
+            con.finish();
+            cache.get(ADDRESS).add(con);
+            return true;
+        }
+    }
+
+    /**
+     * The checkout state of a connection before it had CAS states
+     */
+    private static final class Locked {
+
+        private boolean used;
+
+        synchronized boolean use() {
+            if (used) {
+                return false;
+            }
+            used = true;
+            return true;
+        }
+
+        synchronized void finish() {
+            used = false;
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+package loadtest;
+
+import exception.RemoteError;
+import implementation.Invocation;
+import implementation.InvocationData;
+import implementation.JavaMarshaller;
+import implementation.ServerRequestHandlerImpl;
+import interfaces.Invoker;
+import model.AbsoluteObjectReference;
+import model.ExecutionStrategy;
+import model.ObjectId;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures what each execution strategy of the server costs. A trivial
+ * operation is called back to back over one connection, showing the
+ * price of the thread handoff; then many connections call an operation
+ * blocking for a millisecond, showing how a small pool bounds the calls
+ * running at once while virtual threads don't.
+ * <pre>
+ * java loadtest.ExecutionBenchmark [requests] [connections] [pool size]
+ * </pre>
+ */
+public class ExecutionBenchmark {
+
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    private static final long BLOCKING_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long BLOCKING_SECONDS = 2;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int poolSize = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        AbsoluteObjectReference aor = new AbsoluteObjectReference(new ObjectId(), "localhost", 0, 1);
+        byte[] request = new JavaMarshaller()
+                .marshal(new Invocation(new InvocationData(aor, "echo", "ping"))).toByteArray();
+
+        System.out.println("trivial operation, one connection, " + requests + " requests");
+        for (ExecutionStrategy strategy : ExecutionStrategy.values()) {
+            trivial(strategy, poolSize, request, requests);
+        }
+        System.out.printf("operation blocking 1 ms, %d connections, pool of %d, %ds%n",
+                connections, poolSize, BLOCKING_SECONDS);
+        for (ExecutionStrategy strategy : ExecutionStrategy.values()) {
+            blocking(strategy, poolSize, request, connections);
+        }
+        System.exit(0);
+    }
+
+    private static void trivial(ExecutionStrategy strategy, int poolSize, byte[] request, int requests) throws Exception {
+        ServerRequestHandlerImpl server = start(strategy, poolSize, 0L);
+        LatencyHistogram latencies = new LatencyHistogram();
+        long totalNanos = 0L;
+        try (Socket socket = connect(server)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            for (int i = -requests / 10; i < requests; ++i) {
+                long start = System.nanoTime();
+                call(out, in, request);
+                long elapsed = System.nanoTime() - start;
+                if (i >= 0) {
+                    latencies.record(TimeUnit.NANOSECONDS.toMicros(elapsed));
+                    totalNanos += elapsed;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(strategy + ": " + e);
+            return;
+        } finally {
+            server.shutdown();
+        }
+
+        System.out.printf("  %-8s mean %8d us", strategy.name().toLowerCase(), TimeUnit.NANOSECONDS.toMicros(totalNanos / requests));
+        for (double percentile : PERCENTILES) {
+            System.out.printf("  p%-4s %8d us", percentile, latencies.getPercentile(percentile));
+        }
+        System.out.println();
+    }
+
+    private static void blocking(ExecutionStrategy strategy, int poolSize, byte[] request, int connections)
+            throws Exception {
+        ServerRequestHandlerImpl server = start(strategy, poolSize, BLOCKING_NANOS);
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicLong errors = new AtomicLong();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(BLOCKING_SECONDS);
+        Thread[] clients = new Thread[connections];
+        for (int c = 0; c < connections; ++c) {
+            clients[c] = new Thread(() -> {
+                try (Socket socket = connect(server)) {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    for (long start = System.nanoTime(); start < end; start = System.nanoTime()) {
+                        call(out, in, request);
+                        latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    }
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                }
+            }, "client-" + c);
+            clients[c].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        server.shutdown();
+
+        System.out.printf("  %-8s %8.0f req/s", strategy.name().toLowerCase(),
+                latencies.getCount() / (double) BLOCKING_SECONDS);
+        for (double percentile : PERCENTILES) {
+            System.out.printf("  p%-4s %8d us", percentile, latencies.getPercentile(percentile));
+        }
+        System.out.println(errors.get() > 0 ? "  " + errors.get() + " connections failed" : "");
+    }
+
+    /**
+     * Starts a server echoing the first argument of every call, after the service time
+     */
+    private static ServerRequestHandlerImpl start(ExecutionStrategy strategy, int poolSize, long serviceTimeNanos)
+            throws RemoteError {
+        ServerRequestHandlerImpl server = new ServerRequestHandlerImpl(0, new JavaMarshaller(), poolSize);
+        server.register(1, new Invoker() {
+            @Override
+            public Object invoke(Invocation invocation) {
+                if (serviceTimeNanos > 0) {
+                    LockSupport.parkNanos(serviceTimeNanos);
+                }
+                return invocation.getInvocationData().getActualParams()[0];
+            }
+
+            @Override
+            public ExecutionStrategy getExecution(String operationName) {
+                return strategy;
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static Socket connect(ServerRequestHandlerImpl server) throws IOException {
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        return socket;
+    }
+
+    private static void call(DataOutputStream out, DataInputStream in, byte[] request) throws IOException {
+        out.writeInt(request.length);
+        out.write(request);
+        out.flush();
+        byte[] reply = new byte[in.readInt()];
+        in.readFully(reply);
+    }
+
+}
@@ -0,0 +1,115 @@
+package loadtest;
+
+import implementation.Generator;
+import implementation.IdlParser;
+import model.InterfaceDescription;
+import org.json.simple.parser.JSONParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures reading and generating a synthetic interface description
+ * with many operations: the streaming {@link IdlParser} against
+ * building the JSON document first, as the generator used to, then
+ * building the sources in memory and writing them out.
+ * <pre>
+ * java loadtest.IdlBenchmark [operations] [iterations]
+ * </pre>
+ */
+public class IdlBenchmark {
+
+    private static final String[] TYPES = { "int", "float", "boolean", "string", "char" };
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path idl = Files.createTempFile("idl-benchmark", ".json");
+        Path out = Files.createTempDirectory("idl-benchmark");
+        try {
+            write(idl, operations);
+            System.out.printf("%d operations, %d KiB, %d iterations after one warmup%n",
+                    operations, Files.size(idl) / 1024, iterations);
+
+            long[] tree = new long[iterations];
+            long[] stream = new long[iterations];
+            long[] build = new long[iterations];
+            long[] generate = new long[iterations];
+            for (int i = -1; i < iterations; ++i) {
+                long start = System.nanoTime();
+                try (Reader reader = Files.newBufferedReader(idl, StandardCharsets.UTF_8)) {
+                    new JSONParser().parse(reader);
+                }
+                long parsed = System.nanoTime();
+                InterfaceDescription description = new IdlParser().parse(idl);
+                long streamed = System.nanoTime();
+                new Generator().files(description);
+                long built = System.nanoTime();
+                new Generator().generate(description, out);
+                long generated = System.nanoTime();
+                if (i >= 0) {
+                    tree[i] = parsed - start;
+                    stream[i] = streamed - parsed;
+                    build[i] = built - streamed;
+                    generate[i] = generated - built;
+                }
+            }
+
+            System.out.printf("  %-28s %10s %10s%n", "", "best ms", "mean ms");
+            print("parse, document tree", tree);
+            print("parse, streaming", stream);
+            print("build sources", build);
+            print("build and write sources", generate);
+        } finally {
+            Files.delete(idl);
+            try (Stream<Path> files = Files.walk(out)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Writes an interface of operations with one to four parameters of every type
+     */
+    private static void write(Path file, int operations) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{\n  \"name\": \"Synthetic\",\n  \"description\": \"Generated by IdlBenchmark\",\n");
+            writer.write("  \"operations\": [\n");
+            for (int op = 0; op < operations; ++op) {
+                writer.write(op == 0 ? "    {" : ",\n    {");
+                writer.write("\"name\": \"operation" + op + "\", \"description\": \"Operation number " + op + "\", ");
+                writer.write("\"return\": \"" + TYPES[op % TYPES.length] + "\", ");
+                writer.write("\"idempotent\": " + (op % 2 == 0) + ", \"params\": [");
+                int params = 1 + op % 4;
+                for (int p = 0; p < params; ++p) {
+                    writer.write(p == 0 ? "" : ", ");
+                    writer.write("{\"name\": \"arg" + p + "\", \"type\": \"" + TYPES[(op + p) % TYPES.length]
+                            + "\", \"description\": \"Argument " + p + "\"}");
+                }
+                writer.write("]}");
+            }
+            writer.write("\n  ]\n}\n");
+        }
+    }
+
+    private static void print(String name, long[] nanos) {
+        long best = Long.MAX_VALUE;
+        long total = 0L;
+        for (long n : nanos) {
+            best = Math.min(best, n);
+            total += n;
+        }
+        System.out.printf("  %-28s %10d %10d%n", name, TimeUnit.NANOSECONDS.toMillis(best),
+                TimeUnit.NANOSECONDS.toMillis(total / Math.max(1, nanos.length)));
+    }
+
+}
@@ -0,0 +1,106 @@
+package loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent log-linear histogram of latencies in microseconds,
+ * precise to about 1.5% of the recorded value.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Buckets per power of two, above the linear range
+     */
+    private static final int SUB_BUCKETS = 64;
+
+    /**
+     * Values below this have a bucket each
+     */
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + 57 * SUB_BUCKETS);
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency
+     *
+     * @param micros the latency in microseconds
+     */
+    public void record(long micros) {
+        long value = Math.max(0L, micros);
+        counts.incrementAndGet(indexOf(value));
+        total.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Records a latency, along with the latencies the requests which
+     * should have been sent while it was stalled would have seen.
+     * Used when a closed loop is paced at a fixed interval.
+     *
+     * @param micros the latency in microseconds
+     * @param expectedIntervalMicros the interval between requests
+     */
+    public void record(long micros, long expectedIntervalMicros) {
+        record(micros);
+        if (expectedIntervalMicros <= 0) {
+            return;
+        }
+        for (long missed = micros - expectedIntervalMicros; missed >= expectedIntervalMicros; missed -= expectedIntervalMicros) {
+            record(missed);
+        }
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency (in microseconds) below which that percentage of the records falls
+     */
+    public long getPercentile(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); ++i) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(valueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the highest value of the bucket
+     */
+    private static long valueOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long top = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return (top << shift) + (1L << shift) - 1;
+    }
+
+}
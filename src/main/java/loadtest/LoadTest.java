@@ -0,0 +1,288 @@
+package loadtest;
+
+import exception.InvalidIdlException;
+import exception.RemoteError;
+import implementation.ClientRequestHandlerRegistry;
+import implementation.DefaultClientProtocol;
+import implementation.IdlParser;
+import implementation.RecordingClientProtocol;
+import implementation.ShardedClientProtocol;
+import interfaces.ClientProtocolPlugin;
+import implementation.ServerRequestHandlerImpl;
+import implementation.UnsyncRequestor;
+import interfaces.ClientRequestHandler;
+import interfaces.Requestor;
+import model.AbsoluteObjectReference;
+import model.InterfaceDescription;
+import model.ObjectId;
+import model.OperationDescription;
+import model.ParameterDescription;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the operations of an IDL against a local stand-in server and
+ * reports latency percentiles. Runs on one machine, over loopback.
+ * <p>
+ * In open-loop mode requests are scheduled at a constant rate and each
+ * latency is measured from the time the request was due, so a stalled
+ * server is charged for the requests queued behind it (coordinated
+ * omission correction). In closed-loop mode every worker sends its next
+ * request once the previous one returns; with a rate, workers are paced
+ * and the requests missed during a stall are accounted for as well.
+ * <pre>
+ * java loadtest.LoadTest --idl src/main/java/files/example.json
+ *     [--mode open|closed] [--rate N] [--concurrency N] [--duration S]
+ *     [--warmup S] [--operation NAME] [--payload fixed:N|uniform:MIN:MAX|exponential:MEAN]
+ *     [--service-time-us N] [--protocol default|sharded] [--record FILE]
+ * </pre>
+ * The sharded protocol sends on the worker threads, a shard per core;
+ * the default one hands the calls to its pool.
+ * With --record, the calls are also recorded into a capture file, which
+ * {@link TrafficReplayer} plays back.
+ */
+public class LoadTest {
+
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+    private static final int INVOKER_ID = 1;
+
+    private String idlPath;
+    private boolean openLoop = true;
+    private double rate = 1000;
+    private boolean rateGiven;
+    private int concurrency = 16;
+    private long durationSeconds = 10;
+    private long warmupSeconds = 2;
+    private String operationName;
+    private PayloadDistribution payload = PayloadDistribution.parse("fixed:16");
+    private long serviceTimeMicros;
+    private boolean sharded;
+    private String recordPath;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    /**
+     * Requests sent in the measured period; the histogram can hold more samples,
+     * as paced workers also record the requests missed during a stall
+     */
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        LoadTest test = new LoadTest();
+        try {
+            test.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        try {
+            test.run();
+        } catch (InvalidIdlException e) {
+            System.err.println(test.idlPath + ":" + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value of " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--idl": idlPath = value; break;
+                case "--mode":
+                    if (!"open".equals(value) && !"closed".equals(value)) {
+                        throw new IllegalArgumentException("mode must be open or closed, got " + value);
+                    }
+                    openLoop = "open".equals(value);
+                    break;
+                case "--rate": rate = Double.parseDouble(value); rateGiven = true; break;
+                case "--concurrency": concurrency = Integer.parseInt(value); break;
+                case "--duration": durationSeconds = Long.parseLong(value); break;
+                case "--warmup": warmupSeconds = Long.parseLong(value); break;
+                case "--operation": operationName = value; break;
+                case "--payload": payload = PayloadDistribution.parse(value); break;
+                case "--service-time-us": serviceTimeMicros = Long.parseLong(value); break;
+                case "--protocol":
+                    if (!"default".equals(value) && !"sharded".equals(value)) {
+                        throw new IllegalArgumentException("protocol must be default or sharded, got " + value);
+                    }
+                    sharded = "sharded".equals(value);
+                    break;
+                case "--record": recordPath = value; break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (idlPath == null) {
+            throw new IllegalArgumentException("usage: LoadTest --idl FILE [options], see the class documentation");
+        }
+        if (concurrency <= 0 || rate <= 0 || durationSeconds <= 0 || warmupSeconds < 0) {
+            throw new IllegalArgumentException("concurrency, rate and duration must be positive");
+        }
+    }
+
+    private void run() throws IOException, InvalidIdlException, RemoteError, InterruptedException {
+        InterfaceDescription idl = new IdlParser().parse(Paths.get(idlPath));
+        List<OperationDescription> operations = idl.getOperations();
+        if (operationName != null) {
+            OperationDescription selected = null;
+            for (OperationDescription operation : operations) {
+                if (operation.getName().equals(operationName)) {
+                    selected = operation;
+                }
+            }
+            if (selected == null) {
+                throw new IllegalArgumentException("no operation " + operationName + " in " + idl.getName());
+            }
+            operations = Arrays.asList(selected);
+        }
+
+        ServerRequestHandlerImpl server = new ServerRequestHandlerImpl(0);
+        server.register(INVOKER_ID, new StandInInvoker(idl, TimeUnit.MICROSECONDS.toNanos(serviceTimeMicros)));
+        server.start();
+
+        ClientProtocolPlugin protocol = sharded
+                ? new ShardedClientProtocol(Runtime.getRuntime().availableProcessors(), 60000L)
+                : new DefaultClientProtocol(concurrency, 60000L);
+        if (recordPath != null) {
+            protocol = new RecordingClientProtocol(protocol, Paths.get(recordPath));
+        }
+        ClientRequestHandler handler = ClientRequestHandlerRegistry.register("loadtest", protocol);
+        AbsoluteObjectReference aor = new AbsoluteObjectReference(new ObjectId(), "localhost", server.getPort(), INVOKER_ID);
+
+        long start = System.nanoTime();
+        long recordFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = recordFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        AtomicLong sequence = new AtomicLong();
+
+        final List<OperationDescription> driven = operations;
+        Thread[] workers = new Thread[concurrency];
+        for (int w = 0; w < concurrency; ++w) {
+            workers[w] = new Thread(() -> {
+                Requestor requestor = new UnsyncRequestor(handler);
+                if (openLoop) {
+                    openLoop(requestor, aor, driven, sequence, start, interval, recordFrom, end);
+                } else {
+                    closedLoop(requestor, aor, driven, sequence, rateGiven ? interval * concurrency : 0L, recordFrom, end);
+                }
+            }, "loadtest-" + w);
+            workers[w].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        report(idl, TimeUnit.NANOSECONDS.toSeconds(end - recordFrom));
+        ClientRequestHandlerRegistry.remove("loadtest");
+        server.shutdown();
+    }
+
+    /**
+     * Workers take the next due request, wait until it is due and send it
+     */
+    private void openLoop(Requestor requestor, AbsoluteObjectReference aor, List<OperationDescription> operations,
+            AtomicLong sequence, long start, long interval, long recordFrom, long end) {
+        Random random = ThreadLocalRandom.current();
+        while (true) {
+            long n = sequence.getAndIncrement();
+            long due = start + n * interval;
+            if (due >= end) {
+                return;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            call(requestor, aor, operations.get((int) (n % operations.size())), random);
+            if (due >= recordFrom) {
+                latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+                completed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Workers send back to back, or paced at the given interval
+     */
+    private void closedLoop(Requestor requestor, AbsoluteObjectReference aor, List<OperationDescription> operations,
+            AtomicLong sequence, long interval, long recordFrom, long end) {
+        Random random = ThreadLocalRandom.current();
+        long next = System.nanoTime();
+        while (true) {
+            long sent = System.nanoTime();
+            if (sent >= end) {
+                return;
+            }
+            long n = sequence.getAndIncrement();
+            call(requestor, aor, operations.get((int) (n % operations.size())), random);
+            long now = System.nanoTime();
+            if (sent >= recordFrom) {
+                latencies.record(TimeUnit.NANOSECONDS.toMicros(now - sent), TimeUnit.NANOSECONDS.toMicros(interval));
+                completed.incrementAndGet();
+            }
+            if (interval > 0) {
+                next += interval;
+                if (next > now) {
+                    LockSupport.parkNanos(next - now);
+                } else {
+                    next = now;
+                }
+            }
+        }
+    }
+
+    private void call(Requestor requestor, AbsoluteObjectReference aor, OperationDescription operation, Random random) {
+        List<ParameterDescription> params = operation.getParameters();
+        Object[] arguments = new Object[params.size()];
+        for (int i = 0; i < arguments.length; ++i) {
+            arguments[i] = argument(params.get(i).getType(), random);
+        }
+        try {
+            requestor.request(aor, operation.getName(), arguments);
+        } catch (RemoteError | IOException | ClassNotFoundException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    private Object argument(String type, Random random) {
+        switch (type) {
+            case "int":
+                return random.nextInt(64);
+            case "float":
+                return random.nextFloat();
+            case "boolean":
+                return random.nextBoolean();
+            case "char":
+                return (char) ('a' + random.nextInt(26));
+            default:
+                char[] text = new char[payload.nextSize(random)];
+                Arrays.fill(text, 'x');
+                return new String(text);
+        }
+    }
+
+    private void report(InterfaceDescription idl, long seconds) {
+        System.out.printf("%s, %s loop, concurrency %d%s, payload %s, %ds measured%n", idl.getName(),
+                openLoop ? "open" : "closed", concurrency,
+                openLoop || rateGiven ? String.format(", target %.0f req/s", rate) : "", payload, seconds);
+        System.out.printf("requests %d, errors %d, throughput %.1f req/s%n",
+                completed.get(), errors.get(), completed.get() / (double) seconds);
+        for (double percentile : PERCENTILES) {
+            System.out.printf("  p%-6s %10d us%n", percentile, latencies.getPercentile(percentile));
+        }
+        System.out.printf("  max     %10d us%n", latencies.getMax());
+    }
+
+}
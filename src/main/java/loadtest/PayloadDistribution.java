@@ -0,0 +1,72 @@
+package loadtest;
+
+import java.util.Random;
+
+/**
+ * Distribution of the sizes of generated string arguments, written as
+ * {@code fixed:N}, {@code uniform:MIN:MAX} or {@code exponential:MEAN}.
+ */
+public class PayloadDistribution {
+
+    private final String kind;
+
+    private final int a;
+
+    private final int b;
+
+    private PayloadDistribution(String kind, int a, int b) {
+        this.kind = kind;
+        this.a = a;
+        this.b = b;
+    }
+
+    /**
+     * @param spec the distribution, e.g. "uniform:1:1024"
+     * @return the parsed distribution
+     * @throws IllegalArgumentException if the spec is malformed
+     */
+    public static PayloadDistribution parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            switch (parts[0]) {
+                case "fixed":
+                    return new PayloadDistribution("fixed", Integer.parseInt(parts[1]), 0);
+                case "uniform":
+                    int min = Integer.parseInt(parts[1]);
+                    int max = Integer.parseInt(parts[2]);
+                    if (max < min) {
+                        break;
+                    }
+                    return new PayloadDistribution("uniform", min, max);
+                case "exponential":
+                    return new PayloadDistribution("exponential", Integer.parseInt(parts[1]), 0);
+                default:
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("invalid payload distribution " + spec);
+    }
+
+    /**
+     * @param random the random source of the calling thread
+     * @return a size drawn from the distribution
+     */
+    public int nextSize(Random random) {
+        switch (kind) {
+            case "uniform":
+                return a + random.nextInt(b - a + 1);
+            case "exponential":
+                return (int) Math.min(Integer.MAX_VALUE / 2, Math.round(-a * Math.log(1 - random.nextDouble())));
+            default:
+                return a;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return kind + ":" + a + ("uniform".equals(kind) ? ":" + b : "");
+    }
+
+}
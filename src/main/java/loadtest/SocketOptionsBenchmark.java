@@ -0,0 +1,91 @@
+package loadtest;
+
+import implementation.Invocation;
+import implementation.InvocationData;
+import implementation.JavaMarshaller;
+import implementation.ServerRequestHandlerImpl;
+import model.AbsoluteObjectReference;
+import model.ObjectId;
+import model.SocketOptionsProfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round trip of small requests over loopback, one at a
+ * time, writing the frame as the client protocol used to (length and
+ * message in two writes, JDK socket defaults) and as it does now
+ * (a single write, with and without TCP_NODELAY).
+ * <pre>
+ * java loadtest.SocketOptionsBenchmark [requests]
+ * </pre>
+ */
+public class SocketOptionsBenchmark {
+
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        AbsoluteObjectReference aor = new AbsoluteObjectReference(new ObjectId(), "localhost", 0, 1);
+        byte[] request = new JavaMarshaller()
+                .marshal(new Invocation(new InvocationData(aor, "echo", "ping"))).toByteArray();
+
+        run("split writes, JDK defaults", SocketOptionsProfile.JDK_DEFAULTS, false, request, requests);
+        run("single write, JDK defaults", SocketOptionsProfile.JDK_DEFAULTS, true, request, requests);
+        run("single write, TCP_NODELAY", SocketOptionsProfile.DEFAULT, true, request, requests);
+        System.exit(0);
+    }
+
+    private static void run(String name, SocketOptionsProfile options, boolean singleWrite, byte[] request,
+            int requests) throws Exception {
+        ServerRequestHandlerImpl server = new ServerRequestHandlerImpl(0);
+        server.setSocketOptions(options);
+        server.register(1, invocation -> invocation.getInvocationData().getActualParams()[0]);
+        server.start();
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        long totalNanos = 0L;
+        try (Socket socket = new Socket()) {
+            socket.setTcpNoDelay(options.isTcpNoDelay());
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+            DataOutputStream out = singleWrite
+                    ? new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))
+                    : new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            for (int i = -requests / 10; i < requests; ++i) {
+                long start = System.nanoTime();
+                out.writeInt(request.length);
+                out.write(request);
+                out.flush();
+                byte[] reply = new byte[in.readInt()];
+                in.readFully(reply);
+                long elapsed = System.nanoTime() - start;
+                if (i >= 0) {
+                    latencies.record(TimeUnit.NANOSECONDS.toMicros(elapsed));
+                    totalNanos += elapsed;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(name + ": " + e);
+            return;
+        } finally {
+            server.shutdown();
+        }
+
+        System.out.printf("%-28s mean %8d us", name, TimeUnit.NANOSECONDS.toMicros(totalNanos / requests));
+        for (double percentile : PERCENTILES) {
+            System.out.printf("  p%-4s %8d us", percentile, latencies.getPercentile(percentile));
+        }
+        System.out.println();
+    }
+
+}
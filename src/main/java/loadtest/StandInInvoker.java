@@ -0,0 +1,91 @@
+package loadtest;
+
+import exception.RemoteError;
+import implementation.Invocation;
+import interfaces.Invoker;
+import model.ExecutionStrategy;
+import model.InterfaceDescription;
+import model.OperationDescription;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Invoker standing in for any remote object described by an IDL.
+ * Operations answer a fixed value of their return type after an
+ * optional service time; string operations echo the length of
+ * their first string argument, so reply sizes follow the payloads.
+ * They run where the IDL declares, or all where the test says.
+ */
+public class StandInInvoker implements Invoker {
+
+    private final Map<String, String> returnTypes = new HashMap<String, String>();
+
+    private final Map<String, ExecutionStrategy> executions = new HashMap<String, ExecutionStrategy>();
+
+    private final long serviceTimeNanos;
+
+    /**
+     * @param idl the described interface
+     * @param serviceTimeNanos time each operation takes
+     */
+    public StandInInvoker(InterfaceDescription idl, long serviceTimeNanos) {
+        this(idl, serviceTimeNanos, null);
+    }
+
+    /**
+     * @param idl the described interface
+     * @param serviceTimeNanos time each operation takes
+     * @param execution where every operation runs, null for where the IDL declares
+     */
+    public StandInInvoker(InterfaceDescription idl, long serviceTimeNanos, ExecutionStrategy execution) {
+        for (OperationDescription operation : idl.getOperations()) {
+            returnTypes.put(operation.getName(), operation.getReturnType());
+            executions.put(operation.getName(), execution == null ? operation.getExecution() : execution);
+        }
+        this.serviceTimeNanos = serviceTimeNanos;
+    }
+
+    @Override
+    public ExecutionStrategy getExecution(String operationName) {
+        return executions.getOrDefault(operationName, ExecutionStrategy.INLINE);
+    }
+
+    @Override
+    public Object invoke(Invocation invocation) throws RemoteError {
+        String operationName = invocation.getInvocationData().getOperationName();
+        String type = returnTypes.get(operationName);
+        if (type == null) {
+            throw new RemoteError("Unknown operation " + operationName);
+        }
+        if (serviceTimeNanos > 0) {
+            LockSupport.parkNanos(serviceTimeNanos);
+        }
+        switch (type) {
+            case "int":
+                return 0;
+            case "float":
+                return 0f;
+            case "boolean":
+                return Boolean.FALSE;
+            case "char":
+                return 'a';
+            default:
+                return echo(invocation.getInvocationData().getActualParams());
+        }
+    }
+
+    private static String echo(Object[] params) {
+        for (Object param : params) {
+            if (param instanceof String) {
+                char[] reply = new char[((String) param).length()];
+                Arrays.fill(reply, 'x');
+                return new String(reply);
+            }
+        }
+        return "";
+    }
+
+}
@@ -0,0 +1,224 @@
+package loadtest;
+
+import exception.InvalidIdlException;
+import exception.RemoteError;
+import implementation.CaptureReader;
+import implementation.ClientProtocolLimits;
+import implementation.ClientRequestHandlerRegistry;
+import implementation.IdlParser;
+import implementation.InvocationMessage;
+import implementation.MarshallerRegistry;
+import implementation.ServerRequestHandlerImpl;
+import interfaces.ClientRequestHandler;
+import model.CapturedCall;
+import model.InterfaceDescription;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays the calls of a capture file, recorded by a
+ * {@link implementation.RecordingClientProtocol} (see the --record option
+ * of {@link LoadTest}), and compares the latencies to the recorded ones.
+ * <p>
+ * Calls are sent open loop at the times they were recorded, divided by
+ * the speed ("max" sends them all at once), and each latency is measured
+ * from the time the call was due. Calls go to the address they were
+ * recorded with, unless a target is given, or to a local stand-in server
+ * of the given IDL. Replies which differ from the recorded ones are
+ * counted, as are calls whose outcome (reply or error) changed.
+ * <pre>
+ * java loadtest.TrafficReplayer --capture FILE
+ *     [--target host:port | --idl FILE [--service-time-us N]]
+ *     [--speed X|max] [--concurrency N]
+ * </pre>
+ */
+public class TrafficReplayer {
+
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    /**
+     * Invoker the calls of {@link LoadTest} are recorded with
+     */
+    private static final int INVOKER_ID = 1;
+
+    private static final CapturedCall END = new CapturedCall(0L, 0L, "", 0, null, false, 0, new byte[0], new byte[0]);
+
+    private String capturePath;
+    private String targetHost;
+    private int targetPort;
+    private String idlPath;
+    private long serviceTimeMicros;
+    private double speed = 1.0;
+    private int concurrency = 16;
+
+    private final LatencyHistogram recorded = new LatencyHistogram();
+    private final LatencyHistogram replayed = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong outcomeChanges = new AtomicLong();
+    private final AtomicLong replyMismatches = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        TrafficReplayer replayer = new TrafficReplayer();
+        try {
+            replayer.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        try {
+            replayer.run();
+        } catch (InvalidIdlException e) {
+            System.err.println(replayer.idlPath + ":" + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value of " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--capture": capturePath = value; break;
+                case "--target":
+                    int colon = value.lastIndexOf(':');
+                    if (colon <= 0) {
+                        throw new IllegalArgumentException("target must be host:port, got " + value);
+                    }
+                    targetHost = value.substring(0, colon);
+                    targetPort = Integer.parseInt(value.substring(colon + 1));
+                    break;
+                case "--idl": idlPath = value; break;
+                case "--service-time-us": serviceTimeMicros = Long.parseLong(value); break;
+                case "--speed": speed = "max".equals(value) ? Double.POSITIVE_INFINITY : Double.parseDouble(value); break;
+                case "--concurrency": concurrency = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (capturePath == null) {
+            throw new IllegalArgumentException("usage: TrafficReplayer --capture FILE [options], see the class documentation");
+        }
+        if (targetHost != null && idlPath != null) {
+            throw new IllegalArgumentException("give either a target or an IDL, not both");
+        }
+        if (concurrency <= 0 || !(speed > 0)) {
+            throw new IllegalArgumentException("concurrency and speed must be positive");
+        }
+    }
+
+    private void run() throws IOException, InvalidIdlException, RemoteError, InterruptedException {
+        ServerRequestHandlerImpl server = null;
+        if (idlPath != null) {
+            InterfaceDescription idl = new IdlParser().parse(Paths.get(idlPath));
+            server = new ServerRequestHandlerImpl(0);
+            server.register(INVOKER_ID, new StandInInvoker(idl, TimeUnit.MICROSECONDS.toNanos(serviceTimeMicros)));
+            server.start();
+            targetHost = "localhost";
+            targetPort = server.getPort();
+        }
+
+        ClientRequestHandler handler = ClientRequestHandlerRegistry.getOrCreate("replay",
+                ClientProtocolLimits.DEFAULT.maxConnections(concurrency).timeLimit(60000L));
+        BlockingQueue<CapturedCall> calls = new ArrayBlockingQueue<CapturedCall>(64 * concurrency);
+        long start = System.nanoTime();
+
+        Thread[] workers = new Thread[concurrency];
+        for (int w = 0; w < concurrency; ++w) {
+            workers[w] = new Thread(() -> replay(handler, calls, start), "replay-" + w);
+            workers[w].start();
+        }
+        long count = 0;
+        try (CaptureReader reader = new CaptureReader(Paths.get(capturePath))) {
+            for (CapturedCall call; (call = reader.next()) != null; ++count) {
+                calls.put(call);
+            }
+        } finally {
+            for (int w = 0; w < concurrency; ++w) {
+                calls.put(END);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        report(count, seconds);
+        ClientRequestHandlerRegistry.remove("replay");
+        if (server != null) {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Workers take the next call, wait until it is due and send it
+     */
+    private void replay(ClientRequestHandler handler, BlockingQueue<CapturedCall> calls, long start) {
+        ByteArrayOutputStream msg = new ByteArrayOutputStream();
+        while (true) {
+            CapturedCall call;
+            try {
+                call = calls.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (call == END) {
+                return;
+            }
+            long due = start + (long) (call.getSentNanos() / speed);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            ByteArrayOutputStream request = msg;
+            if (call.getCodec() == MarshallerRegistry.DEFAULT) {
+                msg.reset();
+                msg.write(call.getRequest(), 0, call.getRequest().length);
+            } else {
+                // the protocol takes the codec of the frame header from the message
+                request = InvocationMessage.of(call.getRequest(), call.getCodec());
+            }
+            String host = targetHost != null ? targetHost : call.getHost();
+            int port = targetHost != null ? targetPort : call.getPort();
+            byte[] reply = null;
+            try {
+                ByteArrayInputStream in = handler.send(host, port, request, call.getOptions());
+                reply = new byte[in.available()];
+                in.read(reply, 0, reply.length);
+            } catch (RemoteError e) {
+                errors.incrementAndGet();
+            }
+            replayed.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+            recorded.record(TimeUnit.NANOSECONDS.toMicros(call.getElapsedNanos()));
+            if ((reply == null) != call.isFailed()) {
+                outcomeChanges.incrementAndGet();
+            } else if (reply != null && !Arrays.equals(reply, call.getReply())) {
+                replyMismatches.incrementAndGet();
+            }
+        }
+    }
+
+    private void report(long count, double seconds) {
+        System.out.printf("%s, speed %s, concurrency %d%n", capturePath,
+                Double.isInfinite(speed) ? "max" : String.valueOf(speed), concurrency);
+        System.out.printf("calls %d, errors %d, outcome changes %d, reply mismatches %d, %.1f calls/s%n",
+                count, errors.get(), outcomeChanges.get(), replyMismatches.get(), count / seconds);
+        System.out.printf("           %10s %10s%n", "recorded", "replayed");
+        for (double percentile : PERCENTILES) {
+            System.out.printf("  p%-6s %10d %10d us%n", percentile,
+                    recorded.getPercentile(percentile), replayed.getPercentile(percentile));
+        }
+        System.out.printf("  max     %10d %10d us%n", recorded.getMax(), replayed.getMax());
+    }
+
+}
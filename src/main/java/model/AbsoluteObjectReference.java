@@ -1,5 +1,7 @@
 package model;
 
+import java.io.Serializable;
+
 /**
  * This class describes a remote absolute reference that uniquely identifies a 
  * remote object, holding information such as its id, INVOKATOR identifier, and 
@@ -9,7 +11,9 @@ package model;
  * @version 1.0
  * @see ObjectId
  */
-public class AbsoluteObjectReference {
+public class AbsoluteObjectReference implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	private ObjectId objectId;
 	private String host;
 	private int port;
@@ -0,0 +1,126 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A call read back from a capture file: the marshalled request as it
+ * was sent and its codec, when, to which address, and the reply or
+ * error it got.
+ */
+public final class CapturedCall {
+	
+	private final long sentNanos;
+	private final long elapsedNanos;
+	private final String host;
+	private final int port;
+	private final OperationOptions options;
+	private final boolean failed;
+	private final int codec;
+	private final byte[] request;
+	private final byte[] reply;
+	
+	/**
+	 * @param sentNanos when the call was sent, in nanoseconds since the capture started
+	 * @param elapsedNanos how long it took, in nanoseconds
+	 * @param host the host it was sent to
+	 * @param port the port it was sent to
+	 * @param options the options of the operation
+	 * @param failed true if the call ended with an error
+	 * @param codec the codec tag of the request, 0 for the default codec of the server
+	 * @param request the marshalled request
+	 * @param reply the marshalled reply, or the message of the error in UTF-8
+	 */
+	public CapturedCall(long sentNanos, long elapsedNanos, String host, int port, OperationOptions options,
+			boolean failed, int codec, byte[] request, byte[] reply) {
+		this.sentNanos = sentNanos;
+		this.elapsedNanos = elapsedNanos;
+		this.host = host;
+		this.port = port;
+		this.options = options;
+		this.failed = failed;
+		this.codec = codec;
+		this.request = request;
+		this.reply = reply;
+	}
+	
+	/**
+	 * 
+	 * @return when the call was sent, in nanoseconds since the capture started
+	 */
+	public long getSentNanos() {
+		return sentNanos;
+	}
+	
+	/**
+	 * 
+	 * @return the time from sending the call to its reply or error, in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+	
+	/**
+	 * 
+	 * @return the host the call was sent to
+	 */
+	public String getHost() {
+		return host;
+	}
+	
+	/**
+	 * 
+	 * @return the port the call was sent to
+	 */
+	public int getPort() {
+		return port;
+	}
+	
+	/**
+	 * 
+	 * @return the options of the operation called
+	 */
+	public OperationOptions getOptions() {
+		return options;
+	}
+	
+	/**
+	 * 
+	 * @return true if the call ended with an error instead of a reply
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+	
+	/**
+	 * 
+	 * @return the codec tag of the request and its reply, 0 for the default codec of the server
+	 */
+	public int getCodec() {
+		return codec;
+	}
+	
+	/**
+	 * 
+	 * @return the marshalled request, as sent
+	 */
+	public byte[] getRequest() {
+		return request;
+	}
+	
+	/**
+	 * 
+	 * @return the marshalled reply, or null if the call failed
+	 */
+	public byte[] getReply() {
+		return failed ? null : reply;
+	}
+	
+	/**
+	 * 
+	 * @return the message of the error, or null if the call succeeded
+	 */
+	public String getError() {
+		return failed ? new String(reply, StandardCharsets.UTF_8) : null;
+	}
+	
+}
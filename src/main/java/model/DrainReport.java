@@ -0,0 +1,129 @@
+package model;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of draining a client protocol: whether the calls in flight
+ * finished before the deadline, and how closing the connections to
+ * each endpoint went.
+ */
+public final class DrainReport {
+	
+	private final boolean drained;
+	private final int abandonedCalls;
+	private final Map<String, EndpointReport> endpoints;
+	
+	/**
+	 * @param drained true if every call finished before the deadline
+	 * @param abandonedCalls calls cancelled or cut off at the deadline
+	 * @param endpoints the close results, by address
+	 */
+	public DrainReport(boolean drained, int abandonedCalls, Map<String, EndpointReport> endpoints) {
+		this.drained = drained;
+		this.abandonedCalls = abandonedCalls;
+		this.endpoints = Collections.unmodifiableMap(endpoints);
+	}
+	
+	/**
+	 * 
+	 * @return true if every call finished before the deadline
+	 */
+	public boolean isDrained() {
+		return drained;
+	}
+	
+	/**
+	 * 
+	 * @return the number of calls cancelled while waiting, or cut off
+	 * while being sent, when the deadline passed
+	 */
+	public int getAbandonedCalls() {
+		return abandonedCalls;
+	}
+	
+	/**
+	 * 
+	 * @return the close results of the connections to each address, as host:port
+	 */
+	public Map<String, EndpointReport> getEndpoints() {
+		return endpoints;
+	}
+	
+	/**
+	 * 
+	 * @return true if the calls drained and every connection closed cleanly
+	 */
+	public boolean isClean() {
+		if(!drained) {
+			return false;
+		}
+		for(EndpointReport endpoint : endpoints.values()) {
+			if(!endpoint.getErrors().isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(drained ? "drained" : "deadline passed, " + abandonedCalls + " calls abandoned");
+		for(EndpointReport endpoint : endpoints.values()) {
+			text.append("; ").append(endpoint);
+		}
+		return text.toString();
+	}
+	
+	/**
+	 * How closing the connections to one address went
+	 */
+	public static final class EndpointReport {
+		
+		private final String address;
+		private final int closed;
+		private final List<IOException> errors;
+		
+		/**
+		 * @param address the address, as host:port
+		 * @param closed the number of connections closed without error
+		 * @param errors the errors of the others
+		 */
+		public EndpointReport(String address, int closed, List<IOException> errors) {
+			this.address = address;
+			this.closed = closed;
+			this.errors = Collections.unmodifiableList(errors);
+		}
+		
+		/**
+		 * 
+		 * @return the address, as host:port
+		 */
+		public String getAddress() {
+			return address;
+		}
+		
+		/**
+		 * 
+		 * @return the number of connections closed without error
+		 */
+		public int getClosed() {
+			return closed;
+		}
+		
+		/**
+		 * 
+		 * @return the errors closing the other connections
+		 */
+		public List<IOException> getErrors() {
+			return errors;
+		}
+		
+		@Override
+		public String toString() {
+			return address + ": " + closed + " closed" + (errors.isEmpty() ? "" : ", " + errors.size() + " failed");
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package model;
+
+/**
+ * Where the server runs the invocations of an operation, declared in
+ * the interface description as "execution". Connections are served by
+ * a thread each, which reads a request, runs it and writes the reply.
+ *
+ * @see interfaces.Invoker#getExecution(String)
+ */
+public enum ExecutionStrategy {
+	
+	/**
+	 * On the thread of the connection, without any handoff: for cheap
+	 * operations, and the default
+	 */
+	INLINE,
+	
+	/**
+	 * On the bounded pool of the server, the connection thread waiting
+	 * for it: for blocking operations, so only so many of them run at once
+	 */
+	POOLED,
+	
+	/**
+	 * On a virtual thread of its own, or a pooled thread on runtimes
+	 * without virtual threads: for blocking operations which need no bound
+	 */
+	VIRTUAL;
+	
+	/**
+	 * Gets the strategy of an interface description entry
+	 * @param name the lower case name of the strategy, e.g. "pooled"
+	 * @return the strategy, or null if there is none with that name
+	 */
+	public static ExecutionStrategy fromName(String name) {
+		for(ExecutionStrategy strategy : values()) {
+			if(strategy.name().toLowerCase().equals(name)) {
+				return strategy;
+			}
+		}
+		return null;
+	}
+}
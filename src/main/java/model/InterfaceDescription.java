@@ -0,0 +1,61 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes a remote interface, as read from its interface
+ * description file.
+ * 
+ * @see OperationDescription
+ */
+public class InterfaceDescription {
+	private String name;
+	private String description;
+	private String codec;
+	private final List<OperationDescription> operations = new ArrayList<OperationDescription>();
+	
+	/**
+	 * 
+	 * @return interface name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	public void setName(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * 
+	 * @return interface documentation, may be null
+	 */
+	public String getDescription() {
+		return description;
+	}
+	
+	public void setDescription(String description) {
+		this.description = description;
+	}
+	
+	/**
+	 * 
+	 * @return the name of the codec of the operations which name none, may be null
+	 */
+	public String getCodec() {
+		return codec;
+	}
+	
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+	
+	/**
+	 * 
+	 * @return the operations, in declaration order
+	 */
+	public List<OperationDescription> getOperations() {
+		return operations;
+	}
+}
@@ -1,5 +1,6 @@
 package model;
 
+import java.io.Serializable;
 import java.util.UUID;
 
 /**
@@ -9,15 +10,23 @@ import java.util.UUID;
  * @author Yuri Alessandro Martins 
  * @version 1.0
  */
-public class ObjectId {
+public class ObjectId implements Serializable {
+
+	/**
+	 * Bumped when the UUID field was replaced by its two halves, which
+	 * serialize as two raw longs instead of a nested UUID object
+	 */
+	private static final long serialVersionUID = 2L;
 	
-	private UUID objectId;
+	private final long mostSignificantBits;
+	
+	private final long leastSignificantBits;
 	
 	/**
 	 * Construct new model.ObjectId
 	 */
 	public ObjectId() {
-		this.objectId = UUID.randomUUID();
+		this(UUID.randomUUID());
 	}
 	
 	/**
@@ -26,7 +35,29 @@ public class ObjectId {
 
 	 */
 	public ObjectId(String seed) {
-		this.objectId = UUID.fromString(seed);
+		this(UUID.fromString(seed));
+	}
+	
+	/**
+	 * Construct model.ObjectId from the two halves of its 128 bit value.
+	 * @param mostSignificantBits	Most significant 64 bits.
+	 * @param leastSignificantBits	Least significant 64 bits.
+	 */
+	public ObjectId(long mostSignificantBits, long leastSignificantBits) {
+		this.mostSignificantBits = mostSignificantBits;
+		this.leastSignificantBits = leastSignificantBits;
+	}
+	
+	private ObjectId(UUID uuid) {
+		this(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+	}
+	
+	/**
+	 * Return the most significant 64 bits of this UUID's 128 bit value.
+	 * @return Most significant 64 bits.
+	 */
+	public long getMostSignificantBits() {
+		return this.mostSignificantBits;
 	}
 	
 	/**
@@ -34,6 +65,28 @@ public class ObjectId {
 	 * @return Least significant 64 bits.
 	 */
 	public long getObjectId() {
-		return this.objectId.getLeastSignificantBits();
+		return this.leastSignificantBits;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof ObjectId)) {
+			return false;
+		}
+		ObjectId other = (ObjectId) obj;
+		return mostSignificantBits == other.mostSignificantBits && leastSignificantBits == other.leastSignificantBits;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Long.hashCode(mostSignificantBits ^ leastSignificantBits);
+	}
+	
+	/**
+	 * @return the identifier in the UUID format it can be parsed back from
+	 */
+	@Override
+	public String toString() {
+		return new UUID(mostSignificantBits, leastSignificantBits).toString();
 	}
 }
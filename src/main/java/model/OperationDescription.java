@@ -0,0 +1,201 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes an operation of a remote interface, including the
+ * options it declares.
+ * 
+ * @see InterfaceDescription
+ */
+public class OperationDescription {
+	private String name;
+	private String description;
+	private String returnType;
+	private final List<ParameterDescription> parameters = new ArrayList<ParameterDescription>();
+	private boolean idempotent;
+	private boolean hedged;
+	private boolean coalesced;
+	private boolean vectorizable;
+	private PriorityClass priority = PriorityClass.NORMAL;
+	private ExecutionStrategy execution = ExecutionStrategy.INLINE;
+	private int maxFrameSize;
+	private String codec;
+	
+	/**
+	 * 
+	 * @return operation name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	public void setName(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * 
+	 * @return operation documentation, may be null
+	 */
+	public String getDescription() {
+		return description;
+	}
+	
+	public void setDescription(String description) {
+		this.description = description;
+	}
+	
+	/**
+	 * 
+	 * @return IDL type of the return, e.g. "int"
+	 */
+	public String getReturnType() {
+		return returnType;
+	}
+	
+	public void setReturnType(String returnType) {
+		this.returnType = returnType;
+	}
+	
+	/**
+	 * 
+	 * @return the parameters, in order
+	 */
+	public List<ParameterDescription> getParameters() {
+		return parameters;
+	}
+	
+	/**
+	 * 
+	 * @return true if failed invocations can be retried
+	 */
+	public boolean isIdempotent() {
+		return idempotent || hedged;
+	}
+	
+	public void setIdempotent(boolean idempotent) {
+		this.idempotent = idempotent;
+	}
+	
+	/**
+	 * 
+	 * @return true if slow invocations can be sent twice
+	 */
+	public boolean isHedged() {
+		return hedged;
+	}
+	
+	public void setHedged(boolean hedged) {
+		this.hedged = hedged;
+	}
+	
+	/**
+	 * 
+	 * @return true if the server runs concurrent identical invocations once
+	 */
+	public boolean isCoalesced() {
+		return coalesced;
+	}
+	
+	public void setCoalesced(boolean coalesced) {
+		this.coalesced = coalesced;
+	}
+	
+	/**
+	 * 
+	 * @return true if the operation also has a bulk version taking arrays
+	 */
+	public boolean isVectorizable() {
+		return vectorizable;
+	}
+	
+	public void setVectorizable(boolean vectorizable) {
+		this.vectorizable = vectorizable;
+	}
+	
+	/**
+	 * 
+	 * @return the class the invocations are scheduled in
+	 */
+	public PriorityClass getPriority() {
+		return priority;
+	}
+	
+	public void setPriority(PriorityClass priority) {
+		this.priority = priority;
+	}
+	
+	/**
+	 * 
+	 * @return where the server runs the invocations
+	 */
+	public ExecutionStrategy getExecution() {
+		return execution;
+	}
+	
+	public void setExecution(ExecutionStrategy execution) {
+		this.execution = execution;
+	}
+	
+	/**
+	 * 
+	 * @return the largest request or reply of the scalar calls in bytes, 0 if unlimited
+	 */
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+	
+	public void setMaxFrameSize(int maxFrameSize) {
+		this.maxFrameSize = maxFrameSize;
+	}
+	
+	/**
+	 * 
+	 * @return the name of the codec of the calls, null for the marshaller of the requestor
+	 */
+	public String getCodec() {
+		return codec;
+	}
+	
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+	
+	/**
+	 * 
+	 * @return name of the bulk version of the operation
+	 */
+	public String getBulkName() {
+		return name + "Bulk";
+	}
+	
+	/**
+	 * 
+	 * @return the client side options of the operation
+	 */
+	public OperationOptions getOptions() {
+		OperationOptions options = OperationOptions.DEFAULT.withPriority(priority).withMaxFrameSize(maxFrameSize)
+				.withCodec(codec);
+		if(hedged) {
+			return options.hedged();
+		}
+		if(idempotent) {
+			return options.idempotent();
+		}
+		return options;
+	}
+	
+	/**
+	 * Bulk calls are far slower than the scalar latencies hedging is based on,
+	 * so they are only retried, and they run as batch calls. Their frames
+	 * grow with the arrays, so only the limit of the protocol applies. They
+	 * use the codec of the operation
+	 * @return the client side options of the bulk version of the operation
+	 */
+	public OperationOptions getBulkOptions() {
+		OperationOptions options = OperationOptions.DEFAULT.withPriority(PriorityClass.BATCH).withCodec(codec);
+		return isIdempotent() ? options.idempotent() : options;
+	}
+}
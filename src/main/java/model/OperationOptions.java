@@ -0,0 +1,128 @@
+package model;
+
+/**
+ * Describes how the middleware may treat the invocations of an
+ * operation, as declared in the interface description.
+ * Instances are immutable, each modifier returns a new instance.
+ *
+ * @see AbsoluteObjectReference
+ */
+public final class OperationOptions {
+	
+	/**
+	 * Options of operations which declare nothing
+	 */
+	public static final OperationOptions DEFAULT = new OperationOptions(false, false, PriorityClass.NORMAL, 0, null);
+	
+	private final boolean idempotent;
+	private final boolean hedged;
+	private final PriorityClass priority;
+	private final int maxFrameSize;
+	private final String codec;
+	
+	private OperationOptions(boolean idempotent, boolean hedged, PriorityClass priority, int maxFrameSize, String codec) {
+		this.idempotent = idempotent;
+		this.hedged = hedged;
+		this.priority = priority;
+		this.maxFrameSize = maxFrameSize;
+		this.codec = codec;
+	}
+	
+	/**
+	 * 
+	 * @return true if the operation can be executed more than once
+	 * without changing its outcome, so failed calls can be retried
+	 */
+	public boolean isIdempotent() {
+		return idempotent;
+	}
+	
+	/**
+	 * 
+	 * @return true if slow calls may be duplicated on another connection,
+	 * keeping whichever reply arrives first
+	 */
+	public boolean isHedged() {
+		return hedged;
+	}
+	
+	/**
+	 * 
+	 * @return the class the calls are scheduled in
+	 */
+	public PriorityClass getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * 
+	 * @return the largest request or reply (in bytes) of the calls,
+	 * 0 if only the limit of the protocol applies
+	 */
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+	
+	/**
+	 * 
+	 * @return the name of the codec the calls are marshalled with,
+	 * null if they use the marshaller of their requestor
+	 */
+	public String getCodec() {
+		return codec;
+	}
+	
+	/**
+	 * 
+	 * @return a copy of these options marking the operation as idempotent
+	 */
+	public OperationOptions idempotent() {
+		return new OperationOptions(true, hedged, priority, maxFrameSize, codec);
+	}
+	
+	/**
+	 * Hedging implies idempotence, as the operation may run twice
+	 * @return a copy of these options marking the operation as hedged
+	 */
+	public OperationOptions hedged() {
+		return new OperationOptions(true, true, priority, maxFrameSize, codec);
+	}
+	
+	/**
+	 * 
+	 * @param priority the class the calls are scheduled in
+	 * @return a copy of these options with the given priority class
+	 */
+	public OperationOptions withPriority(PriorityClass priority) {
+		if(priority == null) {
+			throw new IllegalArgumentException("priority cannot be null");
+		}
+		return priority == this.priority ? this : new OperationOptions(idempotent, hedged, priority, maxFrameSize, codec);
+	}
+	
+	/**
+	 * Larger requests fail before being sent; larger replies fail as
+	 * soon as their length is read, closing their connection
+	 * @param maxFrameSize the largest request or reply in bytes, 0 for no limit of its own
+	 * @return a copy of these options with the given frame size limit
+	 */
+	public OperationOptions withMaxFrameSize(int maxFrameSize) {
+		if(maxFrameSize < 0) {
+			throw new IllegalArgumentException("maxFrameSize cannot be negative, got " + maxFrameSize);
+		}
+		return maxFrameSize == this.maxFrameSize ? this : new OperationOptions(idempotent, hedged, priority, maxFrameSize, codec);
+	}
+	
+	/**
+	 * The server must know the codec too, or the calls fail
+	 * @param codec the name of a registered codec, e.g. "compact", null for the marshaller of the requestor
+	 * @return a copy of these options with the given codec
+	 */
+	public OperationOptions withCodec(String codec) {
+		if(codec == null ? this.codec == null : codec.equals(this.codec)) {
+			return this;
+		}
+		return new OperationOptions(idempotent, hedged, priority, maxFrameSize, codec);
+	}
+	
+}
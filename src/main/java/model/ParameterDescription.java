@@ -0,0 +1,48 @@
+package model;
+
+/**
+ * Describes a parameter of an operation of a remote interface.
+ * 
+ * @see OperationDescription
+ */
+public class ParameterDescription {
+	private String name;
+	private String type;
+	private String description;
+	
+	/**
+	 * 
+	 * @return parameter name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	public void setName(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * 
+	 * @return IDL type of the parameter, e.g. "int"
+	 */
+	public String getType() {
+		return type;
+	}
+	
+	public void setType(String type) {
+		this.type = type;
+	}
+	
+	/**
+	 * 
+	 * @return parameter documentation, may be null
+	 */
+	public String getDescription() {
+		return description;
+	}
+	
+	public void setDescription(String description) {
+		this.description = description;
+	}
+}
@@ -0,0 +1,55 @@
+package model;
+
+/**
+ * Scheduling class of the invocations of an operation, declared in the
+ * interface description as "priority". Protocols which queue calls
+ * share their threads across the classes in proportion to their
+ * weights, so a class saturating them doesn't hold the others back.
+ *
+ * @see OperationOptions
+ */
+public enum PriorityClass {
+	
+	/**
+	 * Calls a user is waiting for
+	 */
+	INTERACTIVE(8),
+	
+	/**
+	 * Calls of operations which declare no priority
+	 */
+	NORMAL(4),
+	
+	/**
+	 * Large or background calls, such as the bulk versions of operations
+	 */
+	BATCH(1);
+	
+	private final int defaultWeight;
+	
+	private PriorityClass(int defaultWeight) {
+		this.defaultWeight = defaultWeight;
+	}
+	
+	/**
+	 * 
+	 * @return the share of the threads given to the class unless configured otherwise
+	 */
+	public int getDefaultWeight() {
+		return defaultWeight;
+	}
+	
+	/**
+	 * Gets the class of an interface description entry
+	 * @param name the lower case name of the class, e.g. "batch"
+	 * @return the class, or null if there is none with that name
+	 */
+	public static PriorityClass fromName(String name) {
+		for(PriorityClass priority : values()) {
+			if(priority.name().toLowerCase().equals(name)) {
+				return priority;
+			}
+		}
+		return null;
+	}
+}
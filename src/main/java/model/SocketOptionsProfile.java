@@ -0,0 +1,112 @@
+package model;
+
+/**
+ * Describes the options of the sockets opened to an endpoint.
+ * Instances are immutable, each modifier returns a new instance.
+ * Sizes of 0 and a negative linger keep the system defaults.
+ */
+public final class SocketOptionsProfile {
+
+	/**
+	 * Options used unless configured otherwise: Nagle's algorithm is
+	 * disabled, as requests and replies are small and latency bound
+	 */
+	public static final SocketOptionsProfile DEFAULT = new SocketOptionsProfile(true, 0, 0, false, -1);
+
+	/**
+	 * The options of a socket created by the JDK
+	 */
+	public static final SocketOptionsProfile JDK_DEFAULTS = new SocketOptionsProfile(false, 0, 0, false, -1);
+
+	private final boolean tcpNoDelay;
+	private final int sendBufferSize;
+	private final int receiveBufferSize;
+	private final boolean keepAlive;
+	private final int lingerSeconds;
+
+	private SocketOptionsProfile(boolean tcpNoDelay, int sendBufferSize, int receiveBufferSize,
+			boolean keepAlive, int lingerSeconds) {
+		if(sendBufferSize < 0 || receiveBufferSize < 0) {
+			throw new IllegalArgumentException("buffer sizes cannot be negative");
+		}
+		this.tcpNoDelay = tcpNoDelay;
+		this.sendBufferSize = sendBufferSize;
+		this.receiveBufferSize = receiveBufferSize;
+		this.keepAlive = keepAlive;
+		this.lingerSeconds = lingerSeconds;
+	}
+
+	/**
+	 *
+	 * @return true if small writes are sent at once (TCP_NODELAY)
+	 */
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	/**
+	 *
+	 * @return the send buffer size (SO_SNDBUF) in bytes, 0 for the system default
+	 */
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	/**
+	 *
+	 * @return the receive buffer size (SO_RCVBUF) in bytes, 0 for the system default
+	 */
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	/**
+	 *
+	 * @return true if idle connections are probed (SO_KEEPALIVE)
+	 */
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 *
+	 * @return how long (in seconds) closing waits for unsent data (SO_LINGER),
+	 * negative if closing returns at once
+	 */
+	public int getLingerSeconds() {
+		return lingerSeconds;
+	}
+
+	/**
+	 *
+	 * @return a copy of these options with TCP_NODELAY set as given
+	 */
+	public SocketOptionsProfile tcpNoDelay(boolean tcpNoDelay) {
+		return new SocketOptionsProfile(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, lingerSeconds);
+	}
+
+	/**
+	 *
+	 * @return a copy of these options with the given buffer sizes, 0 for the system defaults
+	 */
+	public SocketOptionsProfile bufferSizes(int sendBufferSize, int receiveBufferSize) {
+		return new SocketOptionsProfile(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, lingerSeconds);
+	}
+
+	/**
+	 *
+	 * @return a copy of these options with SO_KEEPALIVE set as given
+	 */
+	public SocketOptionsProfile keepAlive(boolean keepAlive) {
+		return new SocketOptionsProfile(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, lingerSeconds);
+	}
+
+	/**
+	 *
+	 * @return a copy of these options lingering the given seconds on close, negative to disable
+	 */
+	public SocketOptionsProfile linger(int lingerSeconds) {
+		return new SocketOptionsProfile(tcpNoDelay, sendBufferSize, receiveBufferSize, keepAlive, lingerSeconds);
+	}
+
+}